@@ -0,0 +1,181 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import com.prelert.job.ModelSizeStats;
+import com.prelert.job.ModelSnapshot;
+import com.prelert.job.results.AnomalyCause;
+import com.prelert.job.results.AnomalyRecord;
+import com.prelert.job.results.Bucket;
+import com.prelert.job.results.BucketInfluencer;
+import com.prelert.job.results.Influence;
+import com.prelert.job.results.Influencer;
+import com.prelert.rs.data.Pagination;
+
+/**
+ * Builds results shaped like those of a typical population analysis
+ * job for the benchmarks to serialise.
+ */
+public final class ResultsFixtures
+{
+    private static final long BUCKET_SPAN = 300;
+    private static final long START_MS = 1455000000000L;
+
+    private ResultsFixtures()
+    {
+    }
+
+    public static AnomalyRecord record(int i)
+    {
+        AnomalyRecord record = new AnomalyRecord();
+        record.setId("record" + i);
+        record.setTimestamp(new Date(START_MS + i * BUCKET_SPAN * 1000));
+        record.setBucketSpan(BUCKET_SPAN);
+        record.setDetectorIndex(0);
+        record.setProbability(1.0e-7 * (i + 1));
+        record.setAnomalyScore(80.5 - (i % 50));
+        record.setNormalizedProbability(90.25 - (i % 60));
+        record.setInitialNormalizedProbability(91.0 - (i % 60));
+        record.setFunction("high_count");
+        record.setFunctionDescription("count");
+        record.setFieldName("bytes");
+        record.setOverFieldName("clientip");
+        record.setOverFieldValue("10.0.0." + (i % 256));
+        record.setPartitionFieldName("airline");
+        record.setPartitionFieldValue("AAL");
+        record.setTypical(new double[] {1024.0});
+        record.setActual(new double[] {58312.0 + i});
+
+        List<AnomalyCause> causes = new ArrayList<>();
+        for (int c = 0; c < 2; c++)
+        {
+            AnomalyCause cause = new AnomalyCause();
+            cause.setProbability(1.0e-6 * (c + 1));
+            cause.setFunction("high_count");
+            cause.setFunctionDescription("count");
+            cause.setFieldName("bytes");
+            cause.setOverFieldName("clientip");
+            cause.setOverFieldValue("10.0.0." + (i % 256));
+            cause.setByFieldName("uri");
+            cause.setByFieldValue("/index" + c + ".html");
+            cause.setTypical(new double[] {512.0});
+            cause.setActual(new double[] {29156.0});
+            causes.add(cause);
+        }
+        record.setCauses(causes);
+
+        Influence influence = new Influence("clientip");
+        influence.setInfluencerFieldValues(Arrays.asList("10.0.0." + (i % 256)));
+        record.setInfluencers(Collections.singletonList(influence));
+        return record;
+    }
+
+    public static Influencer influencer(int i)
+    {
+        Influencer influencer = new Influencer("clientip", "10.0.0." + (i % 256));
+        influencer.setId("influencer" + i);
+        influencer.setTimestamp(new Date(START_MS + i * BUCKET_SPAN * 1000));
+        influencer.setProbability(1.0e-5 * (i + 1));
+        influencer.setInitialAnomalyScore(70.0 - (i % 40));
+        influencer.setAnomalyScore(68.5 - (i % 40));
+        return influencer;
+    }
+
+    /**
+     * @param i The bucket number
+     * @param recordCount The number of records expanded into the bucket
+     */
+    public static Bucket bucket(int i, int recordCount)
+    {
+        Bucket bucket = new Bucket();
+        bucket.setId(Long.toString(START_MS / 1000 + i * BUCKET_SPAN));
+        bucket.setTimestamp(new Date(START_MS + i * BUCKET_SPAN * 1000));
+        bucket.setBucketSpan(BUCKET_SPAN);
+        bucket.setAnomalyScore(75.0 - (i % 30));
+        bucket.setInitialAnomalyScore(76.0 - (i % 30));
+        bucket.setMaxNormalizedProbability(88.0 - (i % 30));
+        bucket.setEventCount(12000 + i);
+        bucket.setRecordCount(recordCount);
+
+        List<AnomalyRecord> records = new ArrayList<>();
+        for (int r = 0; r < recordCount; r++)
+        {
+            records.add(record(i * recordCount + r));
+        }
+        bucket.setRecords(records);
+
+        BucketInfluencer bucketInfluencer = new BucketInfluencer();
+        bucketInfluencer.setInfluencerFieldName("clientip");
+        bucketInfluencer.setProbability(1.0e-4);
+        bucketInfluencer.setRawAnomalyScore(3.2);
+        bucketInfluencer.setInitialAnomalyScore(76.0);
+        bucketInfluencer.setAnomalyScore(75.0);
+        bucket.setBucketInfluencers(Collections.singletonList(bucketInfluencer));
+        return bucket;
+    }
+
+    public static ModelSnapshot modelSnapshot(int i)
+    {
+        ModelSizeStats stats = new ModelSizeStats();
+        stats.setModelSizeStatsId("modelSizeStats");
+        stats.setModelBytes(48000000L + i);
+        stats.setTotalByFieldCount(120);
+        stats.setTotalOverFieldCount(4500);
+        stats.setTotalPartitionFieldCount(19);
+        stats.setMemoryStatus("OK");
+        stats.setTimestamp(new Date(START_MS));
+        stats.setLogTime(new Date(START_MS));
+
+        ModelSnapshot snapshot = new ModelSnapshot();
+        snapshot.setSnapshotId(Long.toString(START_MS / 1000 + i));
+        snapshot.setTimestamp(new Date(START_MS + i * 1000L));
+        snapshot.setDescription("State persisted due to job close at 2016-02-09T06:40:00+0000");
+        snapshot.setRestorePriority(i);
+        snapshot.setSnapshotDocCount(3);
+        snapshot.setModelSizeStats(stats);
+        snapshot.setLatestRecordTimeStamp(new Date(START_MS + i * 1000L));
+        snapshot.setLatestResultTimeStamp(new Date(START_MS + i * 1000L));
+        return snapshot;
+    }
+
+    /**
+     * A page of <code>size</code> records
+     */
+    public static Pagination<AnomalyRecord> recordsPage(int size)
+    {
+        List<AnomalyRecord> records = new ArrayList<>();
+        for (int i = 0; i < size; i++)
+        {
+            records.add(record(i));
+        }
+
+        Pagination<AnomalyRecord> page = new Pagination<>();
+        page.setHitCount(size * 10L);
+        page.setSkip(0);
+        page.setTake(size);
+        page.setDocuments(records);
+        return page;
+    }
+}
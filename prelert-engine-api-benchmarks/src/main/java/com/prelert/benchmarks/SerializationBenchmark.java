@@ -0,0 +1,236 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.prelert.job.ModelSnapshot;
+import com.prelert.job.results.AnomalyRecord;
+import com.prelert.job.results.AnomalyRecordBatch;
+import com.prelert.job.results.Bucket;
+import com.prelert.job.results.Influencer;
+import com.prelert.rs.client.ScoresOnlyRecord;
+import com.prelert.rs.data.ObjectMapperFactory;
+import com.prelert.rs.data.Pagination;
+
+/**
+ * Jackson serialisation and deserialisation of the result beans with
+ * the client's {@linkplain ObjectMapperFactory} mapper, in JSON and for
+ * a page of records also in Smile and decoded into columns.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark
+{
+    private static final int PAGE_SIZE = 100;
+    private static final int RECORDS_PER_BUCKET = 10;
+
+    private ObjectMapper m_Mapper;
+    private ObjectMapper m_PlainMapper;
+
+    private Bucket m_Bucket;
+    private AnomalyRecord m_Record;
+    private Influencer m_Influencer;
+    private ModelSnapshot m_ModelSnapshot;
+    private Pagination<AnomalyRecord> m_Page;
+
+    private byte [] m_BucketJson;
+    private byte [] m_RecordJson;
+    private byte [] m_InfluencerJson;
+    private byte [] m_ModelSnapshotJson;
+    private byte [] m_PageJson;
+
+    private ObjectReader m_PageReader;
+
+    private ObjectMapper m_SmileMapper;
+    private byte [] m_PageSmile;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        m_Mapper = ObjectMapperFactory.shared().getMapper();
+
+        m_PlainMapper = new ObjectMapper();
+        m_PlainMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        m_PlainMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+
+        m_Bucket = ResultsFixtures.bucket(1, RECORDS_PER_BUCKET);
+        m_Record = ResultsFixtures.record(1);
+        m_Influencer = ResultsFixtures.influencer(1);
+        m_ModelSnapshot = ResultsFixtures.modelSnapshot(1);
+        m_Page = ResultsFixtures.recordsPage(PAGE_SIZE);
+
+        m_BucketJson = m_Mapper.writeValueAsBytes(m_Bucket);
+        m_RecordJson = m_Mapper.writeValueAsBytes(m_Record);
+        m_InfluencerJson = m_Mapper.writeValueAsBytes(m_Influencer);
+        m_ModelSnapshotJson = m_Mapper.writeValueAsBytes(m_ModelSnapshot);
+        m_PageJson = m_Mapper.writeValueAsBytes(m_Page);
+
+        m_PageReader = ObjectMapperFactory.shared().reader(
+                new TypeReference<Pagination<AnomalyRecord>>() {});
+
+        m_SmileMapper = ObjectMapperFactory.newMapper(new SmileFactory());
+        m_PageSmile = m_SmileMapper.writeValueAsBytes(m_Page);
+    }
+
+    @Benchmark
+    public byte [] writeBucket() throws IOException
+    {
+        return m_Mapper.writeValueAsBytes(m_Bucket);
+    }
+
+    @Benchmark
+    public Bucket readBucket() throws IOException
+    {
+        return m_Mapper.readValue(m_BucketJson, Bucket.class);
+    }
+
+    @Benchmark
+    public byte [] writeRecord() throws IOException
+    {
+        return m_Mapper.writeValueAsBytes(m_Record);
+    }
+
+    @Benchmark
+    public AnomalyRecord readRecord() throws IOException
+    {
+        return m_Mapper.readValue(m_RecordJson, AnomalyRecord.class);
+    }
+
+    @Benchmark
+    public byte [] writeInfluencer() throws IOException
+    {
+        return m_Mapper.writeValueAsBytes(m_Influencer);
+    }
+
+    @Benchmark
+    public Influencer readInfluencer() throws IOException
+    {
+        return m_Mapper.readValue(m_InfluencerJson, Influencer.class);
+    }
+
+    @Benchmark
+    public byte [] writeModelSnapshot() throws IOException
+    {
+        return m_Mapper.writeValueAsBytes(m_ModelSnapshot);
+    }
+
+    @Benchmark
+    public ModelSnapshot readModelSnapshot() throws IOException
+    {
+        return m_Mapper.readValue(m_ModelSnapshotJson, ModelSnapshot.class);
+    }
+
+    @Benchmark
+    public byte [] writeRecordsPage() throws IOException
+    {
+        return m_Mapper.writeValueAsBytes(m_Page);
+    }
+
+    /**
+     * Read a page the way the client does, through a type reference
+     */
+    @Benchmark
+    public Pagination<AnomalyRecord> readRecordsPage() throws IOException
+    {
+        return m_Mapper.readValue(m_PageJson, new TypeReference<Pagination<AnomalyRecord>>() {});
+    }
+
+    /**
+     * Read a page skipping the causes and influencers, as a scores only
+     * records request does
+     */
+    @Benchmark
+    public Pagination<ScoresOnlyRecord> readRecordsPageScoresOnly() throws IOException
+    {
+        return m_Mapper.readValue(m_PageJson, new TypeReference<Pagination<ScoresOnlyRecord>>() {});
+    }
+
+    /**
+     * Read a page with a mapper without the Afterburner module,
+     * as a baseline for {@link #readRecordsPage()}
+     */
+    @Benchmark
+    public Pagination<AnomalyRecord> readRecordsPagePlainMapper() throws IOException
+    {
+        return m_PlainMapper.readValue(m_PageJson, new TypeReference<Pagination<AnomalyRecord>>() {});
+    }
+
+    /**
+     * Read a page with the factory's cached reader
+     */
+    @Benchmark
+    public Pagination<AnomalyRecord> readRecordsPageCachedReader() throws IOException
+    {
+        return m_PageReader.readValue(m_PageJson);
+    }
+
+    @Benchmark
+    public byte [] writeRecordsPageSmile() throws IOException
+    {
+        return m_SmileMapper.writeValueAsBytes(m_Page);
+    }
+
+    /**
+     * Read a page encoded in the binary Smile format
+     */
+    @Benchmark
+    public Pagination<AnomalyRecord> readRecordsPageSmile() throws IOException
+    {
+        return m_SmileMapper.readValue(m_PageSmile, new TypeReference<Pagination<AnomalyRecord>>() {});
+    }
+
+    /**
+     * Decode a page into an {@link AnomalyRecordBatch} rather than
+     * record objects
+     */
+    @Benchmark
+    public AnomalyRecordBatch readRecordsBatch() throws IOException
+    {
+        return m_Mapper.readValue(m_PageJson, AnomalyRecordBatch.class);
+    }
+
+    @Benchmark
+    public AnomalyRecordBatch readRecordsBatchSmile() throws IOException
+    {
+        return m_SmileMapper.readValue(m_PageSmile, AnomalyRecordBatch.class);
+    }
+}
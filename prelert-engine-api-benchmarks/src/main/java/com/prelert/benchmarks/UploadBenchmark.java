@@ -0,0 +1,156 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.prelert.rs.client.EngineApiClient;
+import com.prelert.rs.data.MultiDataPostResult;
+
+/**
+ * Data upload throughput against an in-process Jetty server that reads
+ * and discards the data then replies like the Engine API. The time per
+ * operation is the time to upload <code>dataBytes</code> bytes of
+ * delimited records.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadBenchmark
+{
+    private static final String JOB_ID = "benchmark";
+
+    @Param({"1048576", "67108864"})
+    public int dataBytes;
+
+    private Server m_Server;
+    private EngineApiClient m_Client;
+    private byte [] m_Data;
+
+    /**
+     * Reads the whole request body and replies with the upload's
+     * byte count as a data upload summary
+     */
+    private static class DataHandler extends AbstractHandler
+    {
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse response)
+        throws IOException
+        {
+            long inputBytes = 0;
+            byte [] buffer = new byte[64 * 1024];
+            try (InputStream in = request.getInputStream())
+            {
+                int read;
+                while ((read = in.read(buffer)) > -1)
+                {
+                    inputBytes += read;
+                }
+            }
+
+            byte [] reply = String.format("{\"responses\":[{\"jobId\":\"%s\","
+                    + "\"uploadSummary\":{\"inputBytes\":%d}}]}", JOB_ID, inputBytes)
+                    .getBytes(StandardCharsets.UTF_8);
+            response.setStatus(HttpServletResponse.SC_ACCEPTED);
+            response.setContentType("application/json");
+            response.setContentLength(reply.length);
+            response.getOutputStream().write(reply);
+            baseRequest.setHandled(true);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception
+    {
+        m_Server = new Server();
+        ServerConnector connector = new ServerConnector(m_Server);
+        connector.setHost("localhost");
+        connector.setPort(0);
+        m_Server.addConnector(connector);
+        m_Server.setHandler(new DataHandler());
+        m_Server.start();
+
+        m_Client = new EngineApiClient("http://localhost:" + connector.getLocalPort()
+                + "/engine/v2");
+
+        StringBuilder records = new StringBuilder("time,airline,responsetime\n");
+        for (long time = 1455000000L; records.length() < dataBytes; time++)
+        {
+            records.append(time).append(",AAL,").append(time % 997).append(".25\n");
+        }
+        m_Data = records.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        m_Client.close();
+        m_Server.stop();
+    }
+
+    @Benchmark
+    public MultiDataPostResult streamingUpload() throws IOException
+    {
+        return checked(m_Client.streamingUpload(JOB_ID, new ByteArrayInputStream(m_Data), false));
+    }
+
+    @Benchmark
+    public MultiDataPostResult chunkedUpload() throws IOException
+    {
+        return checked(m_Client.chunkedUpload(JOB_ID, new ByteArrayInputStream(m_Data)));
+    }
+
+    private MultiDataPostResult checked(MultiDataPostResult result) throws IOException
+    {
+        if (result.anErrorOccurred() || m_Client.getLastError() != null)
+        {
+            throw new IOException("Upload failed: " + m_Client.getLastError());
+        }
+        return result;
+    }
+}
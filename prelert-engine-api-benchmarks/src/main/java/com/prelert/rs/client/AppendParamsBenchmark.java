@@ -0,0 +1,85 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Query string building by the request builders. This benchmark is in
+ * the client's package so it can call
+ * {@link BaseJobRequestBuilder#appendParams(Map, StringBuilder)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AppendParamsBenchmark
+{
+    private static final String BASE_URL = "http://localhost:8080/engine/v2/results/farequote/records";
+
+    private Map<String, String> m_FewParams;
+    private Map<String, String> m_ManyParams;
+
+    @Setup
+    public void setup()
+    {
+        m_FewParams = new LinkedHashMap<>();
+        m_FewParams.put(BaseJobRequestBuilder.SKIP_QUERY_PARAM, "0");
+        m_FewParams.put(BaseJobRequestBuilder.TAKE_QUERY_PARAM, "100");
+
+        m_ManyParams = new LinkedHashMap<>(m_FewParams);
+        m_ManyParams.put(BaseJobRequestBuilder.START_QUERY_PARAM, "2016-02-09T00%3A00%3A00Z");
+        m_ManyParams.put(BaseJobRequestBuilder.END_QUERY_PARAM, "2016-02-10T00%3A00%3A00Z");
+        m_ManyParams.put(BaseJobRequestBuilder.INCLUDE_INTERIM_QUERY_PARAM, "true");
+        m_ManyParams.put(BaseJobRequestBuilder.SORT_QUERY_PARAM, "normalizedProbability");
+        m_ManyParams.put(BaseJobRequestBuilder.DESCENDING_ORDER, "true");
+        m_ManyParams.put("anomalyScore", "50.0");
+    }
+
+    @Benchmark
+    public String fewParams()
+    {
+        StringBuilder url = new StringBuilder(BASE_URL);
+        BaseJobRequestBuilder.appendParams(m_FewParams, url);
+        return url.toString();
+    }
+
+    @Benchmark
+    public String manyParams()
+    {
+        StringBuilder url = new StringBuilder(BASE_URL);
+        BaseJobRequestBuilder.appendParams(m_ManyParams, url);
+        return url.toString();
+    }
+}
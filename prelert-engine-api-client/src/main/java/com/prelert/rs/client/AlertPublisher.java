@@ -0,0 +1,455 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.prelert.job.alert.Alert;
+import com.prelert.job.alert.AlertType;
+
+/**
+ * A Reactive Streams <code>Publisher</code> of the alerts of one or
+ * more jobs.
+ * <br>
+ * Polling is driven by demand. Each subscriber has its own long polls
+ * and a job is only polled while the subscriber has requested more
+ * alerts than are already buffered or being polled for. A slow
+ * subscriber therefore slows the polling down and at most one alert
+ * per job is ever buffered beyond what was requested. When demand is
+ * lower than the number of jobs the jobs are polled in turn.
+ * <br>
+ * Alerts can be filtered on their type, score and interim status; the
+ * alerts that are filtered out do not count towards demand. Failed polls
+ * are retried after an exponential backoff so the stream only ends when
+ * the subscription is cancelled.
+ *
+ * <pre>
+ * AlertPublisher publisher = new AlertPublisher(client)
+ *         .watch(new AlertRequestBuilder(client, jobId).score(50.0).timeout(60))
+ *         .minAnomalyScore(75.0)
+ *         .includeInterim(false);
+ * publisher.subscribe(subscriber);
+ * </pre>
+ */
+public class AlertPublisher implements Publisher<Alert>
+{
+    private static final Logger LOGGER = Logger.getLogger(AlertPublisher.class);
+
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 1000;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 60000;
+
+    private static final TypeReference<Alert> ALERT_TYPE = new TypeReference<Alert>() {};
+
+    /**
+     * Shared timer for retrying failed polls. The tasks it runs only
+     * mark a poller as ready so a single thread serves every publisher.
+     */
+    private static final ScheduledExecutorService RETRY_TIMER =
+            Executors.newSingleThreadScheduledExecutor(runnable ->
+            {
+                Thread thread = new Thread(runnable, "alert-publisher-retry");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final AsyncEngineApiClient m_Client;
+    private final List<AlertRequestBuilder> m_Requests;
+    private Set<AlertType> m_AlertTypes;
+    private double m_MinAnomalyScore;
+    private double m_MinNormalizedProbability;
+    private boolean m_IncludeInterim;
+    private long m_InitialBackoffMs;
+    private long m_MaxBackoffMs;
+
+    /**
+     * @param client The Engine API client
+     */
+    public AlertPublisher(EngineApiClient client)
+    {
+        m_Client = client.async();
+        m_Requests = new ArrayList<>();
+        m_AlertTypes = EnumSet.allOf(AlertType.class);
+        m_IncludeInterim = true;
+        m_InitialBackoffMs = DEFAULT_INITIAL_BACKOFF_MS;
+        m_MaxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+    }
+
+    /**
+     * Add a job to publish the alerts of. Subscribers that have already
+     * subscribed are not affected.
+     *
+     * @param request The job and the alert conditions sent to the server
+     * @return this {@code AlertPublisher} object
+     */
+    public AlertPublisher watch(AlertRequestBuilder request)
+    {
+        m_Requests.add(Objects.requireNonNull(request));
+        return this;
+    }
+
+    /**
+     * Only publish alerts of these types. Default is all types.
+     *
+     * @param first An alert type
+     * @param rest Further alert types
+     * @return this {@code AlertPublisher} object
+     */
+    public AlertPublisher alertTypes(AlertType first, AlertType... rest)
+    {
+        m_AlertTypes = EnumSet.of(first, rest);
+        return this;
+    }
+
+    /**
+     * Only publish alerts with an anomalyScore &gt;= <code>score</code>.
+     * Default is 0.
+     *
+     * @param score The anomaly score threshold
+     * @return this {@code AlertPublisher} object
+     */
+    public AlertPublisher minAnomalyScore(double score)
+    {
+        m_MinAnomalyScore = score;
+        return this;
+    }
+
+    /**
+     * Only publish alerts with a maxNormalizedProbability &gt;=
+     * <code>probability</code>. Default is 0.
+     *
+     * @param probability The normalized probability threshold
+     * @return this {@code AlertPublisher} object
+     */
+    public AlertPublisher minNormalizedProbability(double probability)
+    {
+        m_MinNormalizedProbability = probability;
+        return this;
+    }
+
+    /**
+     * Sets whether alerts for interim results are published. Default is
+     * true. The server only sends interim alerts if the requests were
+     * built with {@link AlertRequestBuilder#includeInterim()}.
+     *
+     * @param includeInterim Should interim alerts be published or not
+     * @return this {@code AlertPublisher} object
+     */
+    public AlertPublisher includeInterim(boolean includeInterim)
+    {
+        m_IncludeInterim = includeInterim;
+        return this;
+    }
+
+    /**
+     * Sets the wait before retrying a failed poll and the longest wait
+     * it doubles up to
+     *
+     * @param initialMs The first retry delay
+     * @param maxMs The maximum retry delay
+     * @return this {@code AlertPublisher} object
+     */
+    public AlertPublisher backoff(long initialMs, long maxMs)
+    {
+        if (initialMs < 1 || maxMs < initialMs)
+        {
+            throw new IllegalArgumentException("Invalid backoff " + initialMs + " to "
+                    + maxMs + " ms");
+        }
+        m_InitialBackoffMs = initialMs;
+        m_MaxBackoffMs = maxMs;
+        return this;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Alert> subscriber)
+    {
+        Objects.requireNonNull(subscriber);
+
+        AlertSubscription subscription = new AlertSubscription(subscriber,
+                new AlertFilter(m_AlertTypes, m_MinAnomalyScore, m_MinNormalizedProbability,
+                        m_IncludeInterim),
+                m_InitialBackoffMs, m_MaxBackoffMs);
+        for (AlertRequestBuilder request : m_Requests)
+        {
+            subscription.addJob(request.jobId(), request.buildUrl(),
+                    request.pollRequestTimeoutMs());
+        }
+        subscription.start();
+    }
+
+    /**
+     * The filter settings captured when a subscriber subscribes
+     */
+    private static final class AlertFilter
+    {
+        private final Set<AlertType> m_Types;
+        private final double m_MinAnomalyScore;
+        private final double m_MinNormalizedProbability;
+        private final boolean m_IncludeInterim;
+
+        AlertFilter(Set<AlertType> types, double minAnomalyScore,
+                double minNormalizedProbability, boolean includeInterim)
+        {
+            m_Types = Collections.unmodifiableSet(EnumSet.copyOf(types));
+            m_MinAnomalyScore = minAnomalyScore;
+            m_MinNormalizedProbability = minNormalizedProbability;
+            m_IncludeInterim = includeInterim;
+        }
+
+        boolean accept(Alert alert)
+        {
+            return (alert.getAlertType() == null || m_Types.contains(alert.getAlertType()))
+                    && alert.getAnomalyScore() >= m_MinAnomalyScore
+                    && alert.getMaxNormalizedProbability() >= m_MinNormalizedProbability
+                    && (m_IncludeInterim || !alert.isInterim());
+        }
+    }
+
+    /**
+     * One subscriber's stream. Alerts are emitted by a drain loop that
+     * only ever runs on one thread at a time so the subscriber's methods
+     * are called serially.
+     */
+    private final class AlertSubscription implements Subscription
+    {
+        private final Subscriber<? super Alert> m_Subscriber;
+        private final List<JobPoller> m_Pollers;
+        private final AlertFilter m_Filter;
+        private final long m_InitialBackoffMs;
+        private final long m_MaxBackoffMs;
+
+        private final AtomicLong m_Requested;
+        private final Queue<Alert> m_Buffer;
+        private final Queue<JobPoller> m_Ready;
+        private final AtomicInteger m_InFlight;
+        private final AtomicInteger m_Wip;
+        private volatile boolean m_Cancelled;
+        private volatile Throwable m_Error;
+
+        AlertSubscription(Subscriber<? super Alert> subscriber, AlertFilter filter,
+                long initialBackoffMs, long maxBackoffMs)
+        {
+            m_Subscriber = subscriber;
+            m_Pollers = new ArrayList<>();
+            m_Filter = filter;
+            m_InitialBackoffMs = initialBackoffMs;
+            m_MaxBackoffMs = maxBackoffMs;
+            m_Requested = new AtomicLong();
+            m_Buffer = new ConcurrentLinkedQueue<>();
+            m_Ready = new ConcurrentLinkedQueue<>();
+            m_InFlight = new AtomicInteger();
+            m_Wip = new AtomicInteger();
+        }
+
+        void addJob(String jobId, String url, long pollTimeoutMs)
+        {
+            m_Pollers.add(new JobPoller(jobId, url, pollTimeoutMs));
+        }
+
+        void start()
+        {
+            m_Ready.addAll(m_Pollers);
+            m_Subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+            {
+                m_Error = new IllegalArgumentException(
+                        "Subscriber requested a non-positive number of alerts: " + n);
+            }
+            else
+            {
+                m_Requested.accumulateAndGet(n, (current, add) ->
+                        (current + add < 0) ? Long.MAX_VALUE : current + add);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel()
+        {
+            m_Cancelled = true;
+            for (JobPoller poller : m_Pollers)
+            {
+                poller.cancel();
+            }
+            m_Buffer.clear();
+        }
+
+        void onReady(JobPoller poller)
+        {
+            m_Ready.add(poller);
+            drain();
+        }
+
+        /**
+         * Emit buffered alerts up to the demand then start enough polls
+         * to cover the demand that remains
+         */
+        private void drain()
+        {
+            if (m_Wip.getAndIncrement() != 0)
+            {
+                return;
+            }
+
+            int missed = 1;
+            do
+            {
+                if (m_Cancelled)
+                {
+                    m_Buffer.clear();
+                    return;
+                }
+
+                Throwable error = m_Error;
+                if (error != null)
+                {
+                    cancel();
+                    m_Subscriber.onError(error);
+                    return;
+                }
+
+                while (m_Requested.get() > 0 && !m_Buffer.isEmpty() && !m_Cancelled)
+                {
+                    Alert alert = m_Buffer.poll();
+                    if (m_Requested.get() != Long.MAX_VALUE)
+                    {
+                        m_Requested.decrementAndGet();
+                    }
+                    m_Subscriber.onNext(alert);
+                }
+
+                while (!m_Cancelled
+                        && m_Requested.get() > m_Buffer.size() + m_InFlight.get())
+                {
+                    JobPoller poller = m_Ready.poll();
+                    if (poller == null)
+                    {
+                        break;
+                    }
+                    m_InFlight.incrementAndGet();
+                    poller.poll();
+                }
+
+                missed = m_Wip.addAndGet(-missed);
+            }
+            while (missed != 0);
+        }
+
+        /**
+         * Polls one job. A poller is either in the ready queue, has a poll
+         * in flight or is waiting to retry.
+         */
+        final class JobPoller
+        {
+            private final String m_JobId;
+            private final String m_Url;
+            private final long m_PollTimeoutMs;
+            private volatile CompletableFuture<Alert> m_Poll;
+            private long m_BackoffMs;
+
+            JobPoller(String jobId, String url, long pollTimeoutMs)
+            {
+                m_JobId = jobId;
+                m_Url = url;
+                m_PollTimeoutMs = pollTimeoutMs;
+                m_BackoffMs = m_InitialBackoffMs;
+            }
+
+            void poll()
+            {
+                CompletableFuture<Alert> poll = m_Client.get(m_Url, ALERT_TYPE, m_PollTimeoutMs);
+                m_Poll = poll;
+                poll.whenComplete(this::onPollComplete);
+                if (m_Cancelled)
+                {
+                    poll.cancel(false);
+                }
+            }
+
+            void cancel()
+            {
+                CompletableFuture<Alert> poll = m_Poll;
+                if (poll != null)
+                {
+                    poll.cancel(false);
+                }
+            }
+
+            private void onPollComplete(Alert alert, Throwable error)
+            {
+                if (m_Cancelled)
+                {
+                    return;
+                }
+
+                if (error != null)
+                {
+                    long delay = m_BackoffMs;
+                    m_BackoffMs = Math.min(m_MaxBackoffMs, m_BackoffMs * 2);
+                    LOGGER.warn(String.format("Alert poll for job %s failed, retrying in %d ms",
+                            m_JobId, delay), error);
+
+                    m_InFlight.decrementAndGet();
+                    RETRY_TIMER.schedule(() -> onReady(this), delay, TimeUnit.MILLISECONDS);
+                    return;
+                }
+
+                m_BackoffMs = m_InitialBackoffMs;
+                boolean publish = alert != null && !alert.isTimeout() && m_Filter.accept(alert);
+                if (publish && alert.getJobId() == null)
+                {
+                    alert.setJobId(m_JobId);
+                }
+
+                // Buffer the alert before the poll stops counting as in
+                // flight so demand is never over-covered
+                if (publish)
+                {
+                    m_Buffer.add(alert);
+                }
+                m_InFlight.decrementAndGet();
+                onReady(this);
+            }
+        }
+    }
+}
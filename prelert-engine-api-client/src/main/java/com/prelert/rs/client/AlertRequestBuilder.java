@@ -21,6 +21,8 @@ package com.prelert.rs.client;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.alert.Alert;
@@ -45,6 +47,18 @@ public class AlertRequestBuilder extends BaseJobRequestBuilder<Alert>
 
     public static final String ALERT_ON = "alertOn";
 
+    /**
+     * The long poll timeout the server uses when the request does not
+     * set one
+     */
+    private static final long DEFAULT_POLL_TIMEOUT_SECONDS = 90;
+
+    /**
+     * Allowance on top of the long poll timeout before a client gives
+     * up on a poll the server should already have answered
+     */
+    private static final long POLL_TIMEOUT_MARGIN_MS = 30000;
+
     private Map<String, String> m_Params;
 
     public AlertRequestBuilder(EngineApiClient client, String jobId)
@@ -140,12 +154,41 @@ public class AlertRequestBuilder extends BaseJobRequestBuilder<Alert>
      */
     public Alert get()
     throws IOException
+    {
+        return createHttpGetRequester().get(buildUrl(), new TypeReference<Alert>() {},
+                pollRequestTimeoutMs());
+    }
+
+    /**
+     * Returns a single document with the alert that was requested without blocking
+     *
+     * @return A future of the requested {@link Alert}
+     */
+    public CompletableFuture<Alert> getAsync()
+    {
+        return createHttpGetRequester().getAsync(buildUrl(), new TypeReference<Alert>() {},
+                pollRequestTimeoutMs());
+    }
+
+    String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append(ENDPOINT).append(jobId());
         appendParams(m_Params, url);
+        return url.toString();
+    }
 
-        return createHttpGetRequester().get(url.toString(), new TypeReference<Alert>() {});
+    /**
+     * The client side timeout for a poll, used in place of the client's
+     * request timeout which a long poll may outlast. This allows the
+     * server a margin to answer after the long poll timeout, or after
+     * its default timeout if none was set.
+     */
+    long pollRequestTimeoutMs()
+    {
+        String timeout = m_Params.get(TIMEOUT);
+        long seconds = (timeout == null) ? DEFAULT_POLL_TIMEOUT_SECONDS : Long.parseLong(timeout);
+        return TimeUnit.SECONDS.toMillis(seconds) + POLL_TIMEOUT_MARGIN_MS;
     }
 
     private void addAlertType(String type)
@@ -0,0 +1,432 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.prelert.job.alert.Alert;
+
+/**
+ * Watches the alerts of many jobs without a blocked thread per job.
+ * <br>
+ * Each subscription keeps one long poll outstanding on the
+ * <code>alerts_longpoll</code> endpoint using the client's asynchronous
+ * API. When a poll returns, with an alert or because it timed out, the
+ * next poll is sent straight away. Failed polls are retried after an
+ * exponential backoff that is reset by the next successful poll.
+ * <br>
+ * Alerts are passed to the registered {@link AlertListener}s and offered
+ * to the registered queues on a small fixed pool of delivery threads, so
+ * slow listeners do not hold up the HTTP client. With the default single
+ * delivery thread alerts are delivered in the order they arrive. An alert
+ * that does not fit in a full queue is dropped and counted.
+ * <br>
+ * HTTP/1.1 needs a connection per outstanding poll so build the client
+ * with {@link EngineApiClientBuilder#maxConnectionsPerDestination(int)}
+ * of at least the number of subscriptions, otherwise the surplus polls
+ * wait in the client's queue.
+ * <br>
+ * This class is thread safe.
+ */
+public class AlertSubscriptionManager implements Closeable
+{
+    private static final Logger LOGGER = Logger.getLogger(AlertSubscriptionManager.class);
+
+    public static final int DEFAULT_DELIVERY_THREADS = 1;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 1000;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 60000;
+
+    private static final TypeReference<Alert> ALERT_TYPE = new TypeReference<Alert>() {};
+
+    /**
+     * Receives alerts from all subscriptions
+     */
+    public interface AlertListener
+    {
+        /**
+         * Called for each alert
+         *
+         * @param alert The alert
+         */
+        void onAlert(Alert alert);
+
+        /**
+         * Called when a poll fails, before it is retried
+         *
+         * @param jobId The job whose poll failed
+         * @param cause The failure
+         */
+        default void onError(String jobId, Throwable cause)
+        {
+        }
+    }
+
+    /**
+     * The polling of one job's alerts
+     */
+    public final class Subscription
+    {
+        private final String m_JobId;
+        private final String m_Url;
+        private final long m_PollTimeoutMs;
+        private volatile CompletableFuture<Alert> m_Poll;
+        private volatile boolean m_Cancelled;
+        private long m_BackoffMs;
+
+        private Subscription(String jobId, String url, long pollTimeoutMs)
+        {
+            m_JobId = jobId;
+            m_Url = url;
+            m_PollTimeoutMs = pollTimeoutMs;
+            m_BackoffMs = m_InitialBackoffMs;
+        }
+
+        public String getJobId()
+        {
+            return m_JobId;
+        }
+
+        /**
+         * @return False once the subscription is cancelled or
+         * the manager is closed
+         */
+        public boolean isActive()
+        {
+            return !m_Cancelled && !m_Closed;
+        }
+
+        /**
+         * Stop polling and abort the outstanding poll
+         */
+        public void cancel()
+        {
+            m_Cancelled = true;
+            m_Subscriptions.remove(this);
+            CompletableFuture<Alert> poll = m_Poll;
+            if (poll != null)
+            {
+                poll.cancel(false);
+            }
+        }
+
+        private void poll()
+        {
+            if (!isActive())
+            {
+                return;
+            }
+
+            CompletableFuture<Alert> poll = m_Client.get(m_Url, ALERT_TYPE, m_PollTimeoutMs);
+            m_Poll = poll;
+            m_PollCount.incrementAndGet();
+            poll.whenComplete(this::onPollComplete);
+
+            // cancel() may have run before m_Poll was set
+            if (!isActive())
+            {
+                poll.cancel(false);
+            }
+        }
+
+        /**
+         * Polls of a subscription never overlap so this is not called
+         * concurrently for the same subscription
+         */
+        private void onPollComplete(Alert alert, Throwable error)
+        {
+            if (!isActive())
+            {
+                return;
+            }
+
+            if (error != null)
+            {
+                m_ErrorCount.incrementAndGet();
+                long delay = m_BackoffMs;
+                m_BackoffMs = Math.min(m_MaxBackoffMs, m_BackoffMs * 2);
+                LOGGER.warn(String.format("Alert poll for job %s failed, retrying in %d ms",
+                        m_JobId, delay), error);
+
+                execute(() -> m_Listeners.forEach(l -> l.onError(m_JobId, error)));
+                schedule(this::poll, delay);
+                return;
+            }
+
+            m_BackoffMs = m_InitialBackoffMs;
+            poll();
+
+            if (alert == null || alert.isTimeout())
+            {
+                m_TimeoutCount.incrementAndGet();
+                return;
+            }
+
+            if (alert.getJobId() == null)
+            {
+                alert.setJobId(m_JobId);
+            }
+            m_AlertCount.incrementAndGet();
+            execute(() -> deliver(alert));
+        }
+    }
+
+    private final AsyncEngineApiClient m_Client;
+    private final ScheduledExecutorService m_Executor;
+    private final long m_InitialBackoffMs;
+    private final long m_MaxBackoffMs;
+
+    private final List<AlertListener> m_Listeners;
+    private final List<BlockingQueue<Alert>> m_Queues;
+    private final Set<Subscription> m_Subscriptions;
+    private volatile boolean m_Closed;
+
+    private final AtomicLong m_PollCount;
+    private final AtomicLong m_AlertCount;
+    private final AtomicLong m_TimeoutCount;
+    private final AtomicLong m_ErrorCount;
+    private final AtomicLong m_DroppedCount;
+
+    /**
+     * A manager with {@value #DEFAULT_DELIVERY_THREADS} delivery thread
+     * and the default backoff
+     *
+     * @param client The Engine API client, this must not be closed
+     * before the manager
+     */
+    public AlertSubscriptionManager(EngineApiClient client)
+    {
+        this(client, DEFAULT_DELIVERY_THREADS, DEFAULT_INITIAL_BACKOFF_MS, DEFAULT_MAX_BACKOFF_MS);
+    }
+
+    /**
+     * @param client The Engine API client, this must not be closed
+     * before the manager
+     * @param deliveryThreads The number of threads calling listeners
+     * @param initialBackoffMs The wait before retrying a failed poll
+     * @param maxBackoffMs The longest wait between retries
+     */
+    public AlertSubscriptionManager(EngineApiClient client, int deliveryThreads,
+            long initialBackoffMs, long maxBackoffMs)
+    {
+        if (deliveryThreads < 1)
+        {
+            throw new IllegalArgumentException("Delivery threads must be positive: "
+                    + deliveryThreads);
+        }
+        if (initialBackoffMs < 1 || maxBackoffMs < initialBackoffMs)
+        {
+            throw new IllegalArgumentException("Invalid backoff " + initialBackoffMs
+                    + " to " + maxBackoffMs + " ms");
+        }
+
+        m_Client = client.async();
+        m_InitialBackoffMs = initialBackoffMs;
+        m_MaxBackoffMs = maxBackoffMs;
+
+        AtomicInteger threadCount = new AtomicInteger();
+        m_Executor = Executors.newScheduledThreadPool(deliveryThreads, runnable ->
+        {
+            Thread thread = new Thread(runnable, "alert-delivery-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        m_Listeners = new CopyOnWriteArrayList<>();
+        m_Queues = new CopyOnWriteArrayList<>();
+        m_Subscriptions = ConcurrentHashMap.newKeySet();
+
+        m_PollCount = new AtomicLong();
+        m_AlertCount = new AtomicLong();
+        m_TimeoutCount = new AtomicLong();
+        m_ErrorCount = new AtomicLong();
+        m_DroppedCount = new AtomicLong();
+    }
+
+    /**
+     * Start polling for the alerts described by <code>request</code>.
+     * The request is not used again and may be discarded.
+     *
+     * @param request The job and alert conditions, for example
+     * <code>new AlertRequestBuilder(client, jobId).score(80.0)</code>
+     * @return The subscription
+     */
+    public Subscription subscribe(AlertRequestBuilder request)
+    {
+        if (m_Closed)
+        {
+            throw new IllegalStateException("Alert subscription manager is closed");
+        }
+
+        Subscription subscription = new Subscription(request.jobId(), request.buildUrl(),
+                request.pollRequestTimeoutMs());
+        m_Subscriptions.add(subscription);
+        subscription.poll();
+        return subscription;
+    }
+
+    /**
+     * @param listener Listener to receive the alerts of every subscription
+     */
+    public void addListener(AlertListener listener)
+    {
+        m_Listeners.add(listener);
+    }
+
+    public void removeListener(AlertListener listener)
+    {
+        m_Listeners.remove(listener);
+    }
+
+    /**
+     * Offer the alerts of every subscription to <code>queue</code>.
+     * If the queue is full the alert is dropped.
+     *
+     * @param queue The queue alerts are added to
+     */
+    public void deliverTo(BlockingQueue<Alert> queue)
+    {
+        m_Queues.add(queue);
+    }
+
+    /**
+     * @return The number of active subscriptions
+     */
+    public int getSubscriptionCount()
+    {
+        return m_Subscriptions.size();
+    }
+
+    /**
+     * @return The number of polls sent
+     */
+    public long getPollCount()
+    {
+        return m_PollCount.get();
+    }
+
+    /**
+     * @return The number of alerts received
+     */
+    public long getAlertCount()
+    {
+        return m_AlertCount.get();
+    }
+
+    /**
+     * @return The number of polls that timed out without an alert
+     */
+    public long getTimeoutCount()
+    {
+        return m_TimeoutCount.get();
+    }
+
+    /**
+     * @return The number of polls that failed
+     */
+    public long getErrorCount()
+    {
+        return m_ErrorCount.get();
+    }
+
+    /**
+     * @return The number of alerts not added to a full queue
+     */
+    public long getDroppedCount()
+    {
+        return m_DroppedCount.get();
+    }
+
+    /**
+     * Cancel all subscriptions and stop the delivery threads.
+     * Alerts waiting to be delivered are discarded.
+     */
+    @Override
+    public void close()
+    {
+        m_Closed = true;
+        for (Subscription subscription : m_Subscriptions)
+        {
+            subscription.cancel();
+        }
+        m_Executor.shutdownNow();
+    }
+
+    private void deliver(Alert alert)
+    {
+        for (AlertListener listener : m_Listeners)
+        {
+            try
+            {
+                listener.onAlert(alert);
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.error("Alert listener failed", e);
+            }
+        }
+
+        for (BlockingQueue<Alert> queue : m_Queues)
+        {
+            if (!queue.offer(alert))
+            {
+                m_DroppedCount.incrementAndGet();
+                LOGGER.warn("Alert queue is full, dropping alert for job " + alert.getJobId());
+            }
+        }
+    }
+
+    private void execute(Runnable task)
+    {
+        try
+        {
+            m_Executor.execute(task);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // closed
+        }
+    }
+
+    private void schedule(Runnable task, long delayMs)
+    {
+        try
+        {
+            m_Executor.schedule(task, delayMs, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e)
+        {
+            // closed
+        }
+    }
+}
@@ -0,0 +1,567 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.StringContentProvider;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prelert.job.JobConfiguration;
+import com.prelert.job.JobDetails;
+import com.prelert.job.errorcodes.ErrorCodes;
+import com.prelert.rs.data.ApiError;
+import com.prelert.rs.data.ObjectMapperFactory;
+import com.prelert.rs.data.Pagination;
+import com.prelert.rs.data.SingleDocument;
+
+/**
+ * Non-blocking variant of the {@link EngineApiClient} job operations.
+ * <br>
+ * Every method sends its request with Jetty's asynchronous API and
+ * returns immediately with a {@link CompletableFuture} that completes
+ * when the response arrives, so a single thread can drive many
+ * requests at once. If the server replies with an error the future
+ * completes exceptionally with an {@link EngineApiException} carrying
+ * the {@link ApiError}; transport failures complete it exceptionally
+ * with the underlying exception. Cancelling a future aborts its request.
+ * <br>
+ * Instances are obtained from {@link EngineApiClient#async()} and share
+ * that client's HTTP connection pool. Dependent stages run on the HTTP
+ * client's threads so should not block; use the <code>*Async</code>
+ * methods of <code>CompletableFuture</code> with an executor for long
+ * running work.
+ * <br>
+ * This class is thread safe.
+ */
+public class AsyncEngineApiClient
+{
+    private static final Logger LOGGER = Logger.getLogger(AsyncEngineApiClient.class);
+
+    /**
+     * The largest response body that will be buffered
+     */
+    private static final int MAX_RESPONSE_LENGTH = 64 * 1024 * 1024;
+    private static final String UTF8 = "UTF-8";
+    private static final String APPLICATION_JSON = "application/json";
+
+    private final String m_BaseUrl;
+    private final HttpClient m_HttpClient;
+    private final ObjectMapperFactory m_JsonMappers;
+    private final ObjectMapperFactory m_SmileMappers;
+    private final ObjectMapper m_JsonMapper;
+    private final long m_RequestTimeoutMs;
+    private volatile WireFormat m_WireFormat;
+
+    AsyncEngineApiClient(String baseUrl, HttpClient httpClient, ObjectMapperFactory jsonMappers,
+            ObjectMapperFactory smileMappers, long requestTimeoutMs)
+    {
+        m_BaseUrl = baseUrl;
+        m_HttpClient = httpClient;
+        m_JsonMappers = jsonMappers;
+        m_SmileMappers = smileMappers;
+        m_JsonMapper = jsonMappers.getMapper();
+        m_RequestTimeoutMs = requestTimeoutMs;
+        m_WireFormat = WireFormat.JSON;
+    }
+
+    /**
+     * @param wireFormat The format requested for returned documents
+     * @see EngineApiClient#setWireFormat(WireFormat)
+     */
+    void setWireFormat(WireFormat wireFormat)
+    {
+        m_WireFormat = wireFormat;
+    }
+
+    /**
+     * Get details of all the jobs in database
+     *
+     * @return The {@link Pagination} object containing a list of {@link JobDetails jobs}
+     */
+    public CompletableFuture<Pagination<JobDetails>> getJobs()
+    {
+        String url = m_BaseUrl + "/jobs";
+        LOGGER.debug("GET jobs: " + url);
+
+        return get(url, new TypeReference<Pagination<JobDetails>>() {}).thenApply(page ->
+        {
+            if (page == null)
+            {
+                page = new Pagination<>();
+                page.setDocuments(Collections.<JobDetails>emptyList());
+            }
+            return page;
+        });
+    }
+
+    /**
+     * Get the individual job with the given Id
+     *
+     * @param jobId The Job's unique Id
+     * @return If the job exists a {@link SingleDocument} containing the
+     * {@link JobDetails job} else an empty SingleDocument
+     */
+    public CompletableFuture<SingleDocument<JobDetails>> getJob(String jobId)
+    {
+        String url = m_BaseUrl + "/jobs/" + EngineApiClient.encode(jobId);
+        LOGGER.debug("GET job: " + url);
+
+        return get(url, new TypeReference<SingleDocument<JobDetails>>() {})
+                .thenApply(doc -> doc == null ? new SingleDocument<>() : doc);
+    }
+
+    /**
+     * Create a new Job from the <code>JobConfiguration</code> object.
+     *
+     * @param jobConfig the job configuration
+     * @return The new job's Id
+     */
+    public CompletableFuture<String> createJob(JobConfiguration jobConfig)
+    {
+        String payload;
+        try
+        {
+            payload = m_JsonMapper.writeValueAsString(jobConfig);
+        }
+        catch (IOException e)
+        {
+            return failedFuture(e);
+        }
+        return createJob(payload);
+    }
+
+    /**
+     * Create a new job with the configuration in <code>createJobPayload</code>
+     *
+     * @param createJobPayload The Json configuration for the new job
+     * @return The new job's Id
+     */
+    public CompletableFuture<String> createJob(String createJobPayload)
+    {
+        String url = m_BaseUrl + "/jobs";
+        LOGGER.debug("Create job: " + url);
+
+        Request request = newRequest(url, HttpMethod.POST)
+                .header(HttpHeader.CONTENT_TYPE, APPLICATION_JSON)
+                .header(HttpHeader.CONTENT_ENCODING, UTF8)
+                .content(new StringContentProvider(createJobPayload));
+
+        return send(request, (status, content) ->
+        {
+            if (status != HttpStatus.CREATED_201)
+            {
+                throw toException(status, content);
+            }
+
+            Map<String, String> msg = content.read(new TypeReference<Map<String, String>>() {});
+            if (!msg.containsKey("id"))
+            {
+                throw new IOException("Job created but no 'id' field in returned content: "
+                        + content);
+            }
+            return msg.get("id");
+        });
+    }
+
+    /**
+     * Delete an individual job
+     *
+     * @param jobId The Job's unique Id
+     * @return True once the job has been deleted
+     */
+    public CompletableFuture<Boolean> deleteJob(String jobId)
+    {
+        String url = m_BaseUrl + "/jobs/" + EngineApiClient.encode(jobId);
+        LOGGER.debug("DELETE job: " + url);
+        return sendExpectingStatus(newRequest(url, HttpMethod.DELETE),
+                HttpStatus.OK_200);
+    }
+
+    /**
+     * Pause the analysis of a running job
+     *
+     * @param jobId The job's unique ID
+     * @return True once the job is paused
+     */
+    public CompletableFuture<Boolean> pauseJob(String jobId)
+    {
+        String url = m_BaseUrl + "/jobs/" + EngineApiClient.encode(jobId) + "/pause";
+        LOGGER.debug("Pause job: " + url);
+        return sendExpectingStatus(newRequest(url, HttpMethod.POST),
+                HttpStatus.OK_200);
+    }
+
+    /**
+     * Resume a paused job
+     *
+     * @param jobId The job's unique ID
+     * @return True once the job is resumed
+     */
+    public CompletableFuture<Boolean> resumeJob(String jobId)
+    {
+        String url = m_BaseUrl + "/jobs/" + EngineApiClient.encode(jobId) + "/resume";
+        LOGGER.debug("Resume job: " + url);
+        return sendExpectingStatus(newRequest(url, HttpMethod.POST),
+                HttpStatus.OK_200);
+    }
+
+    /**
+     * Start the Elasticsearch Scheduler for a particular job.
+     *
+     * @param jobId The job's unique ID
+     * @return True once the scheduler is started
+     */
+    public CompletableFuture<Boolean> startScheduler(String jobId)
+    {
+        String url = m_BaseUrl + "/schedulers/" + EngineApiClient.encode(jobId) + "/start";
+        LOGGER.debug("Start scheduler: " + url);
+        return sendExpectingStatus(newRequest(url, HttpMethod.POST),
+                HttpStatus.OK_200);
+    }
+
+    /**
+     * Start the Elasticsearch Scheduler for a particular job.
+     *
+     * @param jobId The job's unique ID
+     * @param start The time specifying the start (inclusive) of the interval data will be analyzed
+     * @param end The time specifying the end (exclusive) of the interval data will be analyzed
+     * @return True once the scheduler is started
+     */
+    public CompletableFuture<Boolean> startScheduler(String jobId, String start, String end)
+    {
+        String url = String.format("%s/schedulers/%s/start?start=%s&end=%s", m_BaseUrl,
+                EngineApiClient.encode(jobId), EngineApiClient.encode(start),
+                EngineApiClient.encode(end));
+        LOGGER.debug("Start scheduler: " + url);
+        return sendExpectingStatus(newRequest(url, HttpMethod.POST),
+                HttpStatus.OK_200);
+    }
+
+    /**
+     * Stop the Elasticsearch Scheduler for a particular job.
+     *
+     * @param jobId The job's unique ID
+     * @return True once the scheduler is stopped
+     */
+    public CompletableFuture<Boolean> stopScheduler(String jobId)
+    {
+        String url = m_BaseUrl + "/schedulers/" + EngineApiClient.encode(jobId) + "/stop";
+        LOGGER.debug("Stop scheduler: " + url);
+        return sendExpectingStatus(newRequest(url, HttpMethod.POST),
+                HttpStatus.OK_200);
+    }
+
+    /**
+     * Flush the job, ensuring that no previously uploaded data is waiting in
+     * buffers.
+     *
+     * @param jobId The Job's unique Id
+     * @param calcInterim Should interim results be calculated for all available buckets
+     * @return True once the job is flushed
+     * @see EngineApiClient#flushJob(String, boolean)
+     */
+    public CompletableFuture<Boolean> flushJob(String jobId, boolean calcInterim)
+    {
+        return flushJob(jobId, calcInterim, null, "", "");
+    }
+
+    /**
+     * Flush the job, ensuring that no previously uploaded data is waiting in
+     * buffers.
+     *
+     * @param jobId The Job's unique Id
+     * @param calcInterim Should interim results for the selected buckets be calculated
+     * @param advanceTime Finalize up to this time, may be <code>null</code>
+     * @param start The start of the time range to calculate interim results for (inclusive)
+     * @param end The end of the time range to calculate interim results for (exclusive)
+     * @return True once the job is flushed
+     * @see EngineApiClient#flushJob(String, boolean, Date, String, String)
+     */
+    public CompletableFuture<Boolean> flushJob(String jobId, boolean calcInterim, Date advanceTime,
+            String start, String end)
+    {
+        String flushUrl = String.format(m_BaseUrl + "/data/%s/flush?calcInterim=%s&start=%s&end=%s",
+                EngineApiClient.encode(jobId), calcInterim ? "true" : "false",
+                EngineApiClient.encode(start), EngineApiClient.encode(end));
+        if (advanceTime != null)
+        {
+            flushUrl += "&advanceTime=" + advanceTime.getTime();
+        }
+        LOGGER.debug("Flushing job " + flushUrl);
+
+        return sendExpectingStatus(newRequest(flushUrl, HttpMethod.POST), HttpStatus.OK_200);
+    }
+
+    /**
+     * Finish the job after all the data has been uploaded
+     *
+     * @param jobId The Job's unique Id
+     * @return True once the job is closed
+     */
+    public CompletableFuture<Boolean> closeJob(String jobId)
+    {
+        String closeUrl = m_BaseUrl + "/data/" + EngineApiClient.encode(jobId) + "/close";
+        LOGGER.debug("Closing job " + closeUrl);
+
+        return send(newRequest(closeUrl, HttpMethod.POST), (status, content) ->
+        {
+            if (status != HttpStatus.ACCEPTED_202 && status != HttpStatus.OK_200)
+            {
+                throw toException(status, content);
+            }
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * A generic HTTP GET to any Url. The result is converted from Json to
+     * the type referenced in <code>typeRef</code>. As with the blocking
+     * client a 404 status is not an error, the content is still parsed.
+     *
+     * @param fullUrl The full URL to GET
+     * @param typeRef The type of the returned document
+     * @param <T> A generic document type
+     * @return A new T
+     * @see EngineApiClient#get(String, TypeReference)
+     */
+    public <T> CompletableFuture<T> get(String fullUrl, TypeReference<T> typeRef)
+    {
+        return get(fullUrl, typeRef, false);
+    }
+
+    /**
+     * A generic HTTP GET to any URI
+     *
+     * @param uri The URI to GET
+     * @param typeRef The type of the returned document
+     * @param <T> A generic document type
+     * @return A new T
+     * @see EngineApiClient#get(URI, TypeReference)
+     */
+    public <T> CompletableFuture<T> get(URI uri, TypeReference<T> typeRef)
+    {
+        return parse(newRequest(uri, HttpMethod.GET), typeRef, false);
+    }
+
+    /**
+     * A generic HTTP GET to any Url
+     *
+     * @param url The URL to GET
+     * @param typeRef The type of the returned document
+     * @param errorOn404 Treat a 404 status code as an error
+     * @param <T> A generic document type
+     * @return A new T
+     * @see EngineApiClient#get(String, TypeReference, boolean)
+     */
+    public <T> CompletableFuture<T> get(String url, TypeReference<T> typeRef, boolean errorOn404)
+    {
+        return parse(newRequest(url, HttpMethod.GET), typeRef, errorOn404);
+    }
+
+    /**
+     * GET with its own total timeout in place of the client's request
+     * timeout, for long polls that are expected to outlast it
+     *
+     * @param timeoutMs The request timeout or 0 for none
+     */
+    <T> CompletableFuture<T> get(String url, TypeReference<T> typeRef, long timeoutMs)
+    {
+        Request request = m_HttpClient.newRequest(url).method(HttpMethod.GET);
+        if (timeoutMs > 0)
+        {
+            request.timeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return parse(request, typeRef, true);
+    }
+
+    private Request newRequest(String url, HttpMethod method)
+    {
+        return applyTimeout(m_HttpClient.newRequest(url).method(method));
+    }
+
+    private Request newRequest(URI uri, HttpMethod method)
+    {
+        return applyTimeout(m_HttpClient.newRequest(uri).method(method));
+    }
+
+    private Request applyTimeout(Request request)
+    {
+        if (m_RequestTimeoutMs > 0)
+        {
+            request.timeout(m_RequestTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return request;
+    }
+
+    private <T> CompletableFuture<T> parse(Request request, TypeReference<T> typeRef,
+            boolean errorOn404)
+    {
+        request.header(HttpHeader.ACCEPT, m_WireFormat.acceptHeader());
+        return send(request, (status, content) ->
+        {
+            // 404 errors return empty paging docs so still read them
+            if (status == HttpStatus.OK_200 || (status == HttpStatus.NOT_FOUND_404 && !errorOn404))
+            {
+                return content.read(typeRef);
+            }
+
+            LOGGER.error(String.format("%s returned status code %d for url %s. Returned content = %s",
+                    request.getMethod(), status, request.getURI(), content));
+            throw toException(status, content);
+        });
+    }
+
+    private CompletableFuture<Boolean> sendExpectingStatus(Request request, int expectedStatus)
+    {
+        return send(request, (status, content) ->
+        {
+            if (status != expectedStatus)
+            {
+                throw toException(status, content);
+            }
+            return Boolean.TRUE;
+        });
+    }
+
+    /**
+     * Converts the status and content of a response
+     */
+    @FunctionalInterface
+    private interface ResponseConverter<T>
+    {
+        T convert(int status, ResponseContent content) throws IOException;
+    }
+
+    /**
+     * The buffered body of a response in JSON or Smile
+     */
+    private final class ResponseContent
+    {
+        private final ObjectMapperFactory m_Mappers;
+        private final byte [] m_Bytes;
+
+        ResponseContent(String contentType, byte [] bytes)
+        {
+            m_Mappers = (WireFormat.fromContentType(contentType) == WireFormat.SMILE)
+                    ? m_SmileMappers : m_JsonMappers;
+            m_Bytes = bytes;
+        }
+
+        boolean isEmpty()
+        {
+            return m_Bytes.length == 0;
+        }
+
+        <T> T read(TypeReference<T> typeRef) throws IOException
+        {
+            return m_Mappers.reader(typeRef).readValue(m_Bytes);
+        }
+
+        <T> T read(Class<T> type) throws IOException
+        {
+            return m_Mappers.reader(type).readValue(m_Bytes);
+        }
+
+        @Override
+        public String toString()
+        {
+            return (m_Mappers == m_JsonMappers) ? new String(m_Bytes, StandardCharsets.UTF_8)
+                    : "<" + m_Bytes.length + " bytes of Smile>";
+        }
+    }
+
+    private <T> CompletableFuture<T> send(Request request, ResponseConverter<T> converter)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        request.send(new BufferingResponseListener(MAX_RESPONSE_LENGTH)
+        {
+            @Override
+            public void onComplete(Result result)
+            {
+                if (result.isFailed())
+                {
+                    LOGGER.error("An error occurred while executing an HTTP request",
+                            result.getFailure());
+                    future.completeExceptionally(result.getFailure());
+                    return;
+                }
+
+                try
+                {
+                    future.complete(converter.convert(result.getResponse().getStatus(),
+                            new ResponseContent(result.getResponse().getHeaders()
+                                    .get(HttpHeader.CONTENT_TYPE), getContent())));
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    future.completeExceptionally(e);
+                }
+            }
+        });
+
+        future.whenComplete((value, e) ->
+        {
+            if (future.isCancelled())
+            {
+                request.abort(new CancellationException("Request cancelled"));
+            }
+        });
+        return future;
+    }
+
+    private EngineApiException toException(int status, ResponseContent content) throws IOException
+    {
+        ApiError error;
+        if (content.isEmpty())
+        {
+            error = new ApiError(ErrorCodes.UNKNOWN_ERROR);
+            error.setMessage("Request failed with status code " + status);
+        }
+        else
+        {
+            error = content.read(ApiError.class);
+        }
+        return new EngineApiException(status, error);
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable failure)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(failure);
+        return future;
+    }
+}
@@ -19,9 +19,17 @@
 package com.prelert.rs.client;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.StringJoiner;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.prelert.rs.data.Pagination;
 
 class BaseJobRequestBuilder<T>
 {
@@ -34,10 +42,12 @@ class BaseJobRequestBuilder<T>
     public static final String INCLUDE_INTERIM_QUERY_PARAM = "includeInterim";
     public static final String EXPAND_QUERY_PARAM = "expand";
     protected static final String UTF8 = "UTF-8";
+    public static final int DEFAULT_PREFETCH_PAGES = 1;
 
 
     private final EngineApiClient m_Client;
     private final String m_JobId;
+    private int m_PrefetchPages = DEFAULT_PREFETCH_PAGES;
 
     /**
      * @param client The Engine API client
@@ -59,11 +69,42 @@ class BaseJobRequestBuilder<T>
         return m_JobId;
     }
 
+    protected EngineApiClient client()
+    {
+        return m_Client;
+    }
+
     protected HttpGetRequester<T> createHttpGetRequester()
     {
         return new HttpGetRequester<>(m_Client);
     }
 
+    protected void setPrefetchPages(int pages)
+    {
+        if (pages < 0)
+        {
+            throw new IllegalArgumentException("Prefetch pages must not be negative: " + pages);
+        }
+        m_PrefetchPages = pages;
+    }
+
+    protected Iterator<T> pageIterator(String firstPageUrl, TypeReference<Pagination<T>> typeRef)
+    {
+        return new PageIterator<>(m_Client.async(), firstPageUrl, typeRef, m_PrefetchPages);
+    }
+
+    /**
+     * A sequential stream over the documents of all the pages.
+     * Closing the stream stops any further pages being fetched.
+     */
+    protected Stream<T> pageStream(String firstPageUrl, TypeReference<Pagination<T>> typeRef)
+    {
+        PageIterator<T> iterator = new PageIterator<>(m_Client.async(), firstPageUrl, typeRef,
+                m_PrefetchPages);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(iterator::cancel);
+    }
+
     protected static void appendParams(Map<String, String> params, StringBuilder url)
     {
         if (!params.isEmpty())
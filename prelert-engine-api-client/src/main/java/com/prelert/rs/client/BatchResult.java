@@ -0,0 +1,114 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.prelert.rs.data.ApiError;
+
+/**
+ * The outcome of applying one operation to many jobs. Each job either
+ * succeeded, failed with an {@link ApiError} or, if the batch was
+ * interrupted, has an unknown outcome. Jobs are reported once each in
+ * the order they were given.
+ */
+public class BatchResult
+{
+    private final List<String> m_Succeeded;
+    private final Map<String, ApiError> m_Errors;
+    private final List<String> m_Interrupted;
+
+    BatchResult()
+    {
+        m_Succeeded = new ArrayList<>();
+        m_Errors = new LinkedHashMap<>();
+        m_Interrupted = new ArrayList<>();
+    }
+
+    void addSuccess(String jobId)
+    {
+        m_Succeeded.add(jobId);
+    }
+
+    void addError(String jobId, ApiError error)
+    {
+        m_Errors.put(jobId, error);
+    }
+
+    void addInterrupted(String jobId)
+    {
+        m_Interrupted.add(jobId);
+    }
+
+    /**
+     * @return The ids of the jobs the operation succeeded for
+     */
+    public List<String> getSucceeded()
+    {
+        return Collections.unmodifiableList(m_Succeeded);
+    }
+
+    /**
+     * @return The error for each job the operation failed for
+     */
+    public Map<String, ApiError> getErrors()
+    {
+        return Collections.unmodifiableMap(m_Errors);
+    }
+
+    /**
+     * @return The ids of the jobs whose outcome is not known because the
+     * batch was interrupted. Their requests were either never sent or
+     * had not completed and may still take effect.
+     */
+    public List<String> getInterrupted()
+    {
+        return Collections.unmodifiableList(m_Interrupted);
+    }
+
+    /**
+     * @param jobId The job's unique Id
+     * @return The job's error or null if the operation succeeded,
+     * its outcome is unknown or the job was not part of the batch
+     */
+    public ApiError getError(String jobId)
+    {
+        return m_Errors.get(jobId);
+    }
+
+    /**
+     * @return true if the operation failed for any job
+     */
+    public boolean anErrorOccurred()
+    {
+        return !m_Errors.isEmpty();
+    }
+
+    /**
+     * @return true if the outcome is known for every job
+     */
+    public boolean isComplete()
+    {
+        return m_Interrupted.isEmpty();
+    }
+}
@@ -21,6 +21,7 @@ package com.prelert.rs.client;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.results.Bucket;
@@ -69,17 +70,36 @@ public class BucketRequestBuilder extends BaseJobRequestBuilder<Bucket>
     }
 
     /**
-     * Returns a single document with the bucket that was requested
+     * Returns a single document with the bucket that was requested.
+     * Served from the client's {@link ResultsCache} if it has one.
      *
      * @return A {@link SingleDocument} object containing the requested {@link Bucket} object
      * @throws IOException If HTTP GET fails
      */
     public SingleDocument<Bucket> get() throws IOException
+    {
+        return createHttpGetRequester().getCachedSingleDocument(jobId(), buildUrl(),
+                new TypeReference<SingleDocument<Bucket>>() {}, Bucket::getTimestamp,
+                Bucket::isInterim);
+    }
+
+    /**
+     * Returns a single document with the bucket that was requested without blocking
+     *
+     * @return A future of the {@link SingleDocument} object containing the requested
+     * {@link Bucket} object
+     */
+    public CompletableFuture<SingleDocument<Bucket>> getAsync()
+    {
+        return createHttpGetRequester().getSingleDocumentAsync(buildUrl(),
+                new TypeReference<SingleDocument<Bucket>>() {});
+    }
+
+    private String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append("/results/").append(jobId()).append("/buckets/").append(m_BucketTimestamp);
         appendParams(m_Params, url);
-        return createHttpGetRequester().getSingleDocument(url.toString(),
-                new TypeReference<SingleDocument<Bucket>>() {});
+        return url.toString();
     }
 }
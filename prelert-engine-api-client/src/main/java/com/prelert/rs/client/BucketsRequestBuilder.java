@@ -21,8 +21,11 @@ package com.prelert.rs.client;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.results.Bucket;
@@ -170,17 +173,77 @@ public class BucketsRequestBuilder extends BaseJobRequestBuilder<Bucket>
     }
 
     /**
-     * Returns the page with the buckets that were requested
+     * Returns the page with the buckets that were requested.
+     * Served from the client's {@link ResultsCache} if it has one.
      *
      * @return A {@link Pagination} object containing the resulted {@link Bucket} objects
      * @throws IOException If HTTP GET fails
      */
     public Pagination<Bucket> get() throws IOException
+    {
+        return createHttpGetRequester().getCachedPage(jobId(), buildUrl(),
+                new TypeReference<Pagination<Bucket>>() {}, Bucket::getTimestamp,
+                Bucket::isInterim);
+    }
+
+    /**
+     * Returns the page with the buckets that were requested without blocking
+     *
+     * @return A future of the {@link Pagination} object containing the resulted {@link Bucket}
+     * objects
+     */
+    public CompletableFuture<Pagination<Bucket>> getAsync()
+    {
+        return createHttpGetRequester().getPageAsync(buildUrl(),
+                new TypeReference<Pagination<Bucket>>() {});
+    }
+
+    /**
+     * Sets how many pages {@link #iterator()} and {@link #stream()} fetch
+     * in the background ahead of the page being read. Default is
+     * {@value #DEFAULT_PREFETCH_PAGES}.
+     *
+     * @param pages The number of pages to prefetch, 0 fetches each page
+     * only when it is needed
+     * @return this {@code Builder} object
+     */
+    public BucketsRequestBuilder prefetch(int pages)
+    {
+        setPrefetchPages(pages);
+        return this;
+    }
+
+    /**
+     * Returns an iterator over all the buckets that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. A failed request is thrown as an
+     * {@link java.io.UncheckedIOException}.
+     *
+     * @return An iterator of {@link Bucket} objects
+     */
+    public Iterator<Bucket> iterator()
+    {
+        return pageIterator(buildUrl(), new TypeReference<Pagination<Bucket>>() {});
+    }
+
+    /**
+     * Returns a lazy stream of all the buckets that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. Close the stream if it is not read to the end
+     * so no further pages are fetched.
+     *
+     * @return A stream of {@link Bucket} objects
+     */
+    public Stream<Bucket> stream()
+    {
+        return pageStream(buildUrl(), new TypeReference<Pagination<Bucket>>() {});
+    }
+
+    private String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append("/results/").append(jobId()).append("/buckets");
         appendParams(m_Params, url);
-        return createHttpGetRequester().getPage(url.toString(),
-                new TypeReference<Pagination<Bucket>>() {});
+        return url.toString();
     }
 }
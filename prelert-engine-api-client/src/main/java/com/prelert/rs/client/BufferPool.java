@@ -0,0 +1,183 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * A bounded pool of fixed size byte buffers used for reading upload
+ * data. Buffers are returned to the pool once the HTTP client has sent
+ * their contents so steady uploads reuse the same few buffers rather
+ * than allocating a new array for every read.
+ * <br>
+ * If the pool is empty when a buffer is requested a new buffer is
+ * allocated (a miss). At most <code>poolSize</code> buffers are kept
+ * when they are released, any more are left to the garbage collector.
+ * <br>
+ * This class is thread safe.
+ */
+public class BufferPool
+{
+    public static final int DEFAULT_POOL_SIZE = 16;
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private final int m_PoolSize;
+    private final int m_BufferSize;
+    private final BlockingQueue<ByteBuffer> m_Buffers;
+
+    private final AtomicLong m_Hits;
+    private final AtomicLong m_Misses;
+
+    /**
+     * Create a pool of {@value #DEFAULT_POOL_SIZE} buffers of
+     * {@value #DEFAULT_BUFFER_SIZE} bytes
+     */
+    public BufferPool()
+    {
+        this(DEFAULT_POOL_SIZE, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param poolSize The maximum number of buffers kept in the pool
+     * @param bufferSize The size in bytes of each buffer
+     */
+    public BufferPool(int poolSize, int bufferSize)
+    {
+        if (poolSize < 1 || bufferSize < 1)
+        {
+            throw new IllegalArgumentException("Pool size and buffer size must be positive");
+        }
+
+        m_PoolSize = poolSize;
+        m_BufferSize = bufferSize;
+        m_Buffers = new ArrayBlockingQueue<>(poolSize);
+        m_Hits = new AtomicLong();
+        m_Misses = new AtomicLong();
+    }
+
+    /**
+     * Take a buffer from the pool or allocate a new one if
+     * the pool is empty. The buffer is cleared.
+     *
+     * @return A heap buffer of {@link #getBufferSize()} bytes
+     */
+    public ByteBuffer acquire()
+    {
+        ByteBuffer buffer = m_Buffers.poll();
+        if (buffer == null)
+        {
+            m_Misses.incrementAndGet();
+            return ByteBuffer.allocate(m_BufferSize);
+        }
+
+        m_Hits.incrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool. Buffers that are not the pool's
+     * size or that do not fit in the pool are discarded.
+     *
+     * @param buffer A buffer previously acquired from this pool
+     */
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer.capacity() == m_BufferSize && buffer.hasArray())
+        {
+            buffer.clear();
+            m_Buffers.offer(buffer);
+        }
+    }
+
+    /**
+     * A callback for a content provider that releases <code>buffer</code>
+     * back to the pool when the HTTP client has finished with it,
+     * whether or not it was sent successfully.
+     *
+     * @param buffer A buffer previously acquired from this pool
+     * @return The callback
+     */
+    Callback releaseCallback(ByteBuffer buffer)
+    {
+        return new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                release(buffer);
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                release(buffer);
+            }
+        };
+    }
+
+    public int getPoolSize()
+    {
+        return m_PoolSize;
+    }
+
+    public int getBufferSize()
+    {
+        return m_BufferSize;
+    }
+
+    /**
+     * @return The number of buffers currently waiting in the pool
+     */
+    public int getAvailableCount()
+    {
+        return m_Buffers.size();
+    }
+
+    /**
+     * @return The number of requests served by a pooled buffer
+     */
+    public long getHitCount()
+    {
+        return m_Hits.get();
+    }
+
+    /**
+     * @return The number of requests that had to allocate a new buffer
+     */
+    public long getMissCount()
+    {
+        return m_Misses.get();
+    }
+
+    /**
+     * @return The proportion of requests served from the pool
+     * or 0 if no buffers have been requested
+     */
+    public double getHitRate()
+    {
+        long hits = m_Hits.get();
+        long total = hits + m_Misses.get();
+        return (total == 0) ? 0.0 : (double) hits / total;
+    }
+}
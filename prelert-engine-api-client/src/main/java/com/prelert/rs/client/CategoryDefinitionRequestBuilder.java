@@ -19,6 +19,7 @@
 package com.prelert.rs.client;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.results.CategoryDefinition;
@@ -47,11 +48,29 @@ public class CategoryDefinitionRequestBuilder extends BaseJobRequestBuilder<Cate
      * @throws IOException If HTTP GET fails
      */
     public SingleDocument<CategoryDefinition> get() throws IOException
+    {
+        return createHttpGetRequester().getSingleDocument(buildUrl(),
+                new TypeReference<SingleDocument<CategoryDefinition>>() {});
+    }
+
+    /**
+     * Returns a single document with the category definition that was requested without blocking
+     *
+     * @return A future of the {@link SingleDocument} object containing the requested
+     * {@link CategoryDefinition}
+     * object
+     */
+    public CompletableFuture<SingleDocument<CategoryDefinition>> getAsync()
+    {
+        return createHttpGetRequester().getSingleDocumentAsync(buildUrl(),
+                new TypeReference<SingleDocument<CategoryDefinition>>() {});
+    }
+
+    private String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append("/results/").append(jobId()).append("/categorydefinitions/")
                 .append(m_CategoryId);
-        return createHttpGetRequester().getSingleDocument(url.toString(),
-                new TypeReference<SingleDocument<CategoryDefinition>>() {});
+        return url.toString();
     }
 }
@@ -19,8 +19,11 @@
 package com.prelert.rs.client;
 
 import java.io.IOException;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.results.CategoryDefinition;
@@ -72,11 +75,70 @@ public class CategoryDefinitionsRequestBuilder extends BaseJobRequestBuilder<Cat
      * @throws IOException If the HTTP GET fails
      */
     public Pagination<CategoryDefinition> get() throws IOException
+    {
+        return createHttpGetRequester().getPage(buildUrl(),
+                new TypeReference<Pagination<CategoryDefinition>>() {});
+    }
+
+    /**
+     * Returns the page with the category definitions that were requested without blocking
+     *
+     * @return A future of the {@link Pagination} object containing the resulted
+     * {@link CategoryDefinition}
+     * objects
+     */
+    public CompletableFuture<Pagination<CategoryDefinition>> getAsync()
+    {
+        return createHttpGetRequester().getPageAsync(buildUrl(),
+                new TypeReference<Pagination<CategoryDefinition>>() {});
+    }
+
+    /**
+     * Sets how many pages {@link #iterator()} and {@link #stream()} fetch
+     * in the background ahead of the page being read. Default is
+     * {@value #DEFAULT_PREFETCH_PAGES}.
+     *
+     * @param pages The number of pages to prefetch, 0 fetches each page
+     * only when it is needed
+     * @return this {@code Builder} object
+     */
+    public CategoryDefinitionsRequestBuilder prefetch(int pages)
+    {
+        setPrefetchPages(pages);
+        return this;
+    }
+
+    /**
+     * Returns an iterator over all the category definitions that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. A failed request is thrown as an
+     * {@link java.io.UncheckedIOException}.
+     *
+     * @return An iterator of {@link CategoryDefinition} objects
+     */
+    public Iterator<CategoryDefinition> iterator()
+    {
+        return pageIterator(buildUrl(), new TypeReference<Pagination<CategoryDefinition>>() {});
+    }
+
+    /**
+     * Returns a lazy stream of all the category definitions that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. Close the stream if it is not read to the end
+     * so no further pages are fetched.
+     *
+     * @return A stream of {@link CategoryDefinition} objects
+     */
+    public Stream<CategoryDefinition> stream()
+    {
+        return pageStream(buildUrl(), new TypeReference<Pagination<CategoryDefinition>>() {});
+    }
+
+    private String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append("/results/").append(jobId()).append("/categorydefinitions");
         appendParams(m_Params, url);
-        return createHttpGetRequester().getPage(url.toString(),
-                new TypeReference<Pagination<CategoryDefinition>>() {});
+        return url.toString();
     }
 }
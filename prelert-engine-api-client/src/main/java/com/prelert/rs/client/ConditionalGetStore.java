@@ -0,0 +1,185 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the last response to each GET request that carried an
+ * <code>ETag</code> or <code>Last-Modified</code> header so the next
+ * request for the same URL can be made conditional. If the server
+ * replies <code>304 Not Modified</code> the previously parsed object is
+ * returned without downloading or parsing the body again.
+ * <br>
+ * This suits resources that are polled often but change rarely, so it
+ * is only used for the job list, job details and category definitions.
+ * The object parsed from a full response is stored as it is returned, so
+ * it and the objects returned after a 304 are shared between callers and
+ * must not be modified.
+ * <br>
+ * At most <code>maxEntries</code> responses are kept, the least
+ * recently used is discarded first. This class is thread safe.
+ */
+public class ConditionalGetStore
+{
+    public static final int DEFAULT_MAX_ENTRIES = 500;
+
+    /**
+     * A parsed response and the validators that identify its version
+     */
+    static final class Validated
+    {
+        private final Type m_Type;
+        private final String m_ETag;
+        private final String m_LastModified;
+        private final Object m_Value;
+
+        Validated(Type type, String eTag, String lastModified, Object value)
+        {
+            m_Type = type;
+            m_ETag = eTag;
+            m_LastModified = lastModified;
+            m_Value = value;
+        }
+
+        String getETag()
+        {
+            return m_ETag;
+        }
+
+        String getLastModified()
+        {
+            return m_LastModified;
+        }
+
+        Object getValue()
+        {
+            return m_Value;
+        }
+    }
+
+    private final int m_MaxEntries;
+    private final LinkedHashMap<String, Validated> m_Entries;
+    private final AtomicLong m_NotModifiedCount;
+    private final AtomicLong m_ModifiedCount;
+
+    /**
+     * Create a store of {@value #DEFAULT_MAX_ENTRIES} entries
+     */
+    public ConditionalGetStore()
+    {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxEntries The maximum number of URLs remembered
+     */
+    public ConditionalGetStore(int maxEntries)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        m_MaxEntries = maxEntries;
+        m_Entries = new LinkedHashMap<>(16, 0.75f, true);
+        m_NotModifiedCount = new AtomicLong();
+        m_ModifiedCount = new AtomicLong();
+    }
+
+    /**
+     * The stored response for <code>url</code> if it was parsed as
+     * <code>type</code>
+     */
+    synchronized Validated get(String url, Type type)
+    {
+        Validated entry = m_Entries.get(url);
+        return (entry != null && Objects.equals(entry.m_Type, type)) ? entry : null;
+    }
+
+    /**
+     * Store a full response. Responses without validators
+     * cannot be revalidated and are not stored.
+     */
+    synchronized void put(String url, Type type, String eTag, String lastModified, Object value)
+    {
+        m_ModifiedCount.incrementAndGet();
+        if (eTag == null && lastModified == null)
+        {
+            m_Entries.remove(url);
+            return;
+        }
+
+        m_Entries.put(url, new Validated(type, eTag, lastModified, value));
+        while (m_Entries.size() > m_MaxEntries)
+        {
+            Iterator<String> eldest = m_Entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Record that a stored response was reused after a 304
+     */
+    void notModified()
+    {
+        m_NotModifiedCount.incrementAndGet();
+    }
+
+    /**
+     * Forget all stored responses
+     */
+    public synchronized void clear()
+    {
+        m_Entries.clear();
+    }
+
+    /**
+     * @return The number of URLs with a stored response
+     */
+    public synchronized int size()
+    {
+        return m_Entries.size();
+    }
+
+    public int getMaxEntries()
+    {
+        return m_MaxEntries;
+    }
+
+    /**
+     * @return The number of requests answered by a 304 Not Modified
+     */
+    public long getNotModifiedCount()
+    {
+        return m_NotModifiedCount.get();
+    }
+
+    /**
+     * @return The number of requests that returned a full response
+     */
+    public long getModifiedCount()
+    {
+        return m_ModifiedCount.get();
+    }
+}
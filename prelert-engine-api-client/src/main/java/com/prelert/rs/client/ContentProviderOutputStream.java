@@ -0,0 +1,153 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+
+/**
+ * An output stream that collects what is written to it in pooled buffers
+ * and offers each buffer to a {@link DeferredContentProvider} once it is
+ * full. Buffers go back to the pool when the HTTP client has sent them.
+ * Each buffer's bytes are reserved from an {@link UploadFlowController}
+ * before it is offered, so writing waits while the request has too many
+ * unsent bytes. Once the request has ended buffers are dropped.
+ * <br>
+ * Closing the stream offers any partly filled buffer but does not close
+ * the content provider.
+ */
+class ContentProviderOutputStream extends OutputStream
+{
+    private final DeferredContentProvider m_ContentProvider;
+    private final BufferPool m_BufferPool;
+    private final UploadFlowController m_FlowController;
+    private final BooleanSupplier m_RequestActive;
+    private ByteBuffer m_Buffer;
+    private long m_BytesWritten;
+
+    ContentProviderOutputStream(DeferredContentProvider contentProvider, BufferPool bufferPool,
+            UploadFlowController flowController, BooleanSupplier requestActive)
+    {
+        m_ContentProvider = contentProvider;
+        m_BufferPool = bufferPool;
+        m_FlowController = flowController;
+        m_RequestActive = requestActive;
+    }
+
+    @Override
+    public void write(int b) throws IOException
+    {
+        ensureBuffer();
+        m_Buffer.put((byte) b);
+        m_BytesWritten++;
+        if (!m_Buffer.hasRemaining())
+        {
+            offerBuffer();
+        }
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException
+    {
+        int written = 0;
+        while (written < length)
+        {
+            ensureBuffer();
+            int count = Math.min(length - written, m_Buffer.remaining());
+            m_Buffer.put(bytes, offset + written, count);
+            written += count;
+            if (!m_Buffer.hasRemaining())
+            {
+                offerBuffer();
+            }
+        }
+        m_BytesWritten += length;
+    }
+
+    /**
+     * Offers the partly filled buffer, if any.
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        if (m_Buffer != null && m_Buffer.position() > 0)
+        {
+            offerBuffer();
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        flush();
+        if (m_Buffer != null)
+        {
+            m_BufferPool.release(m_Buffer);
+            m_Buffer = null;
+        }
+    }
+
+    /**
+     * @return The number of bytes written to the stream
+     */
+    long getBytesWritten()
+    {
+        return m_BytesWritten;
+    }
+
+    private void ensureBuffer()
+    {
+        if (m_Buffer == null)
+        {
+            m_Buffer = m_BufferPool.acquire();
+        }
+    }
+
+    private void offerBuffer() throws IOException
+    {
+        ByteBuffer buffer = m_Buffer;
+        m_Buffer = null;
+        buffer.flip();
+        int length = buffer.remaining();
+
+        // Wait for earlier buffers to be sent rather than queue without limit
+        boolean acquired = false;
+        try
+        {
+            acquired = m_FlowController.acquire(length, m_RequestActive);
+        }
+        finally
+        {
+            if (!acquired)
+            {
+                m_BufferPool.release(buffer);
+            }
+        }
+
+        if (acquired)
+        {
+            m_ContentProvider.offer(buffer, m_FlowController.releaseCallback(length,
+                    m_BufferPool.releaseCallback(buffer)));
+        }
+    }
+}
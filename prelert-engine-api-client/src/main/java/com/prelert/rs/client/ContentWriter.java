@@ -0,0 +1,43 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+
+/**
+ * Offers the request content of an upload to the request's
+ * content provider.
+ */
+@FunctionalInterface
+interface ContentWriter
+{
+    /**
+     * Write content until there is no more or <code>requestActive</code>
+     * returns false because the server has already replied.
+     *
+     * @param contentProvider The upload request's content
+     * @param requestActive False once the request has completed
+     * @throws IOException If reading the content fails
+     */
+    void write(DeferredContentProvider contentProvider, BooleanSupplier requestActive)
+    throws IOException;
+}
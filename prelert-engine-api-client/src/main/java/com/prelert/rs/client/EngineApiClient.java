@@ -18,31 +18,56 @@
 
 package com.prelert.rs.client;
 
+import java.io.BufferedReader;
 import java.io.Closeable;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.zip.ZipInputStream;
 
 import org.apache.log4j.Logger;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.client.api.ContentResponse;
 import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Response;
 import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.ByteBufferContentProvider;
 import org.eclipse.jetty.client.util.BytesContentProvider;
 import org.eclipse.jetty.client.util.DeferredContentProvider;
 import org.eclipse.jetty.client.util.InputStreamResponseListener;
@@ -50,14 +75,20 @@ import org.eclipse.jetty.client.util.StringContentProvider;
 import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.util.Callback;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.base.Strings;
+import com.google.common.io.ByteStreams;
+import com.prelert.job.AnalysisConfig;
+import com.prelert.job.DataCounts;
+import com.prelert.job.DataDescription;
+import com.prelert.job.DataDescription.DataFormat;
 import com.prelert.job.Detector;
 import com.prelert.job.JobConfiguration;
 import com.prelert.job.JobDetails;
@@ -68,6 +99,7 @@ import com.prelert.job.transform.TransformConfig;
 import com.prelert.rs.data.ApiError;
 import com.prelert.rs.data.DataPostResponse;
 import com.prelert.rs.data.MultiDataPostResult;
+import com.prelert.rs.data.ObjectMapperFactory;
 import com.prelert.rs.data.Pagination;
 import com.prelert.rs.data.SingleDocument;
 
@@ -79,24 +111,43 @@ import com.prelert.rs.data.SingleDocument;
  * <br>
  * Implements closeable so it can be used in a try-with-resource statement
  * <br>
- * Not reentrant; each object of this class may only be used for one
- * interaction with the server at any time.  If you need multiple parallel
- * interactions with the server, you must create multiple instances of this
- * class.
+ * This class is thread safe; a single instance and its connection pool can
+ * be shared by many threads. The error returned by {@linkplain #getLastError()}
+ * is recorded per thread so it always describes the last call made by the
+ * calling thread.
  */
 public class EngineApiClient implements Closeable
 {
     private static final Logger LOGGER = Logger.getLogger(EngineApiClient.class);
     private static final int MAX_BUFFER_SIZE = 4096 * 1024;
-    private static final int MIN_BUFFER_GROWTH = 1024;
-    private static final double BUFFER_GROWTH_FACTOR = 0.1;
+    private static final int DEFAULT_CHUNKS_AHEAD = 2;
+    private static final int DEFAULT_CHUNK_RETRIES = 3;
+    private static final long CHUNK_RETRY_DELAY_MS = 500;
+    private static final long MAPPED_REGION_SIZE = 256L * 1024 * 1024;
     private static final String UTF8 = "UTF-8";
     private static final String APPLICATION_JSON = "application/json";
 
+    /**
+     * The paths, relative to the base URL, of the resources that GETs
+     * are made conditional for: the job list, job documents and
+     * category definitions
+     */
+    private static final Pattern CONDITIONAL_GET_PATH = Pattern.compile(
+            "/jobs(/[^/]+)?|/results/[^/]+/categorydefinitions(/[^/]+)?");
+
     private final String m_BaseUrl;
+    private final ObjectMapperFactory m_JsonMappers;
+    private final ObjectMapperFactory m_SmileMappers;
     private final ObjectMapper m_JsonMapper;
     private final HttpClient m_HttpClient;
-    private ApiError m_LastError;
+    private final AsyncEngineApiClient m_AsyncClient;
+    private final long m_RequestTimeoutMs;
+    private volatile BufferPool m_BufferPool;
+    private volatile UploadFlowController m_UploadFlowController;
+    private volatile ResultsCache m_ResultsCache;
+    private volatile ConditionalGetStore m_ConditionalGetStore;
+    private volatile WireFormat m_WireFormat;
+    private final ThreadLocal<ApiError> m_LastError;
 
     /**
      * Creates a new http client and Json object mapper.
@@ -104,11 +155,29 @@ public class EngineApiClient implements Closeable
      *
      * @param baseUrl The base URL for the REST API including version number
      * e.g <code>http://localhost:8080/engine/v2/</code>
+     * @see EngineApiClientBuilder
      */
     public EngineApiClient(String baseUrl)
+    {
+        this(baseUrl, new HttpClient(), 0, new BufferPool());
+    }
+
+    /**
+     * Creates a client around an unstarted, already configured
+     * <code>httpClient</code>. Used by {@linkplain EngineApiClientBuilder}.
+     *
+     * @param baseUrl The base URL for the REST API including version number
+     * @param httpClient The HTTP client, this is started here and stopped
+     * when this object is closed
+     * @param requestTimeoutMs The total time allowed for API requests other
+     * than data uploads, log downloads and alert long polls or 0 for no limit
+     * @param bufferPool The pool of buffers used by streaming uploads
+     */
+    EngineApiClient(String baseUrl, HttpClient httpClient, long requestTimeoutMs,
+            BufferPool bufferPool)
     {
         m_BaseUrl = baseUrl;
-        m_HttpClient = new HttpClient();
+        m_HttpClient = httpClient;
         try
         {
             m_HttpClient.start();
@@ -117,9 +186,28 @@ public class EngineApiClient implements Closeable
         {
             LOGGER.fatal("Failed to start the HTTP client", e);
         }
-        m_JsonMapper = new ObjectMapper();
-        m_JsonMapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
-        m_JsonMapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        m_JsonMappers = ObjectMapperFactory.shared();
+        m_SmileMappers = new ObjectMapperFactory(new SmileFactory());
+        m_JsonMapper = m_JsonMappers.getMapper();
+        m_WireFormat = WireFormat.JSON;
+        m_RequestTimeoutMs = requestTimeoutMs;
+        m_BufferPool = bufferPool;
+        m_UploadFlowController = new UploadFlowController();
+        m_LastError = new ThreadLocal<>();
+        m_AsyncClient = new AsyncEngineApiClient(m_BaseUrl, m_HttpClient, m_JsonMappers,
+                m_SmileMappers, requestTimeoutMs);
+    }
+
+    /**
+     * Start building a client with a tuned HTTP connection pool
+     *
+     * @param baseUrl The base URL for the REST API including version number
+     * e.g <code>http://localhost:8080/engine/v2/</code>
+     * @return A new builder
+     */
+    public static EngineApiClientBuilder builder(String baseUrl)
+    {
+        return new EngineApiClientBuilder(baseUrl);
     }
 
     /**
@@ -138,6 +226,18 @@ public class EngineApiClient implements Closeable
         }
     }
 
+    /**
+     * The non-blocking view of this client. Its methods return
+     * <code>CompletableFuture</code>s and it shares this client's
+     * HTTP connections, so it is only usable until this client is closed.
+     *
+     * @return The asynchronous client
+     */
+    public AsyncEngineApiClient async()
+    {
+        return m_AsyncClient;
+    }
+
     /**
      * Get details of all the jobs in database
      *
@@ -218,7 +318,7 @@ public class EngineApiClient implements Closeable
         String url = m_BaseUrl + "/jobs";
         LOGGER.debug("Create job: " + url);
 
-        Request request = m_HttpClient.POST(url)
+        Request request = newRequest(url, HttpMethod.POST)
                 .header(HttpHeader.CONTENT_TYPE, APPLICATION_JSON)
                 .header(HttpHeader.CONTENT_ENCODING, UTF8)
                 .content(new StringContentProvider(createJobPayload));
@@ -228,7 +328,7 @@ public class EngineApiClient implements Closeable
 
         if (response.getStatus() == HttpStatus.CREATED_201)
         {
-            m_LastError = null;
+            m_LastError.set(null);
 
             Map<String, String> msg = m_JsonMapper.readValue(content,
                     new TypeReference<Map<String, String>>() {} );
@@ -245,7 +345,7 @@ public class EngineApiClient implements Closeable
             String msg = String.format("Error creating job status code = %d. "
                     + "Returned content: %s", response.getStatus(), content);
             LOGGER.error(msg);
-            m_LastError = m_JsonMapper.readValue(content, new TypeReference<ApiError>() {} );
+            m_LastError.set(m_JsonMapper.readValue(content, new TypeReference<ApiError>() {} ));
         }
 
         return "";
@@ -279,7 +379,7 @@ public class EngineApiClient implements Closeable
         String url = m_BaseUrl + "/validate/detector";
         LOGGER.debug("Validate detector " + detector + ", at: " + url);
 
-        Request request = m_HttpClient.POST(url)
+        Request request = newRequest(url, HttpMethod.POST)
                 .header(HttpHeader.CONTENT_TYPE, APPLICATION_JSON)
                 .header(HttpHeader.CONTENT_ENCODING, UTF8)
                 .content(new StringContentProvider(detector));
@@ -294,12 +394,12 @@ public class EngineApiClient implements Closeable
                     response.getStatus(), content);
 
             LOGGER.error(msg);
-            m_LastError = m_JsonMapper.readValue(content,
-                    new TypeReference<ApiError>() {} );
+            m_LastError.set(m_JsonMapper.readValue(content,
+                    new TypeReference<ApiError>() {} ));
             return false;
         }
 
-        m_LastError = null;
+        m_LastError.set(null);
         return true;
     }
 
@@ -331,7 +431,7 @@ public class EngineApiClient implements Closeable
         String url = m_BaseUrl + "/validate/transform";
         LOGGER.debug("Validate transform " + transform + ", at: " + url);
 
-        Request request = m_HttpClient.POST(url)
+        Request request = newRequest(url, HttpMethod.POST)
                 .header(HttpHeader.CONTENT_TYPE, APPLICATION_JSON)
                 .header(HttpHeader.CONTENT_ENCODING, UTF8)
                 .content(new StringContentProvider(transform));
@@ -346,12 +446,12 @@ public class EngineApiClient implements Closeable
                     response.getStatus(), content);
 
             LOGGER.error(msg);
-            m_LastError = m_JsonMapper.readValue(content,
-                    new TypeReference<ApiError>() {} );
+            m_LastError.set(m_JsonMapper.readValue(content,
+                    new TypeReference<ApiError>() {} ));
             return false;
         }
 
-        m_LastError = null;
+        m_LastError.set(null);
         return true;
     }
 
@@ -383,7 +483,7 @@ public class EngineApiClient implements Closeable
         String url = m_BaseUrl + "/validate/transforms";
         LOGGER.debug("Validate transforms " + transforms + ", at: " + url);
 
-        Request request = m_HttpClient.POST(url)
+        Request request = newRequest(url, HttpMethod.POST)
                 .header(HttpHeader.CONTENT_TYPE, APPLICATION_JSON)
                 .header(HttpHeader.CONTENT_ENCODING, UTF8)
                 .content(new StringContentProvider(transforms));
@@ -398,12 +498,12 @@ public class EngineApiClient implements Closeable
                     response.getStatus(), content);
 
             LOGGER.error(msg);
-            m_LastError = m_JsonMapper.readValue(content,
-                    new TypeReference<ApiError>() {} );
+            m_LastError.set(m_JsonMapper.readValue(content,
+                    new TypeReference<ApiError>() {} ));
             return false;
         }
 
-        m_LastError = null;
+        m_LastError.set(null);
         return true;
     }
 
@@ -437,8 +537,7 @@ public class EngineApiClient implements Closeable
         String url = m_BaseUrl + "/jobs/" + encode(jobId) + "/update";
         LOGGER.debug("PUT update job: " + url);
 
-        Request request = m_HttpClient.newRequest(url)
-                .method(HttpMethod.PUT)
+        Request request = newRequest(url, HttpMethod.PUT)
                 .header(HttpHeader.CONTENT_TYPE, APPLICATION_JSON)
                 .header(HttpHeader.CONTENT_ENCODING, UTF8)
                 .content(new StringContentProvider(updateJson));
@@ -464,8 +563,7 @@ public class EngineApiClient implements Closeable
         LOGGER.debug("PUT update ModelSnapshot description: " + url);
         String json = "{\"description\":\"" + description + "\"}";
 
-        Request request = m_HttpClient.newRequest(url)
-                .method(HttpMethod.PUT)
+        Request request = newRequest(url, HttpMethod.PUT)
                 .header(HttpHeader.CONTENT_TYPE, APPLICATION_JSON)
                 .header(HttpHeader.CONTENT_ENCODING, UTF8)
                 .content(new StringContentProvider(json));
@@ -544,7 +642,7 @@ public class EngineApiClient implements Closeable
 
     private SingleDocument<ModelSnapshot> revertModelSnapshot(String url) throws JsonParseException, JsonMappingException, IOException
     {
-        Request request = m_HttpClient.newRequest(url).method(HttpMethod.POST);
+        Request request = newRequest(url, HttpMethod.POST);
 
         ContentResponse response = executeRequest(request);
         return m_JsonMapper.readValue(response.getContentAsString(), new TypeReference<SingleDocument<ModelSnapshot>>() {} );
@@ -564,10 +662,34 @@ public class EngineApiClient implements Closeable
     {
         String url = m_BaseUrl + "/modelsnapshots/" + encode(jobId) + "/" + encode(snapshotId);
         LOGGER.debug("DELETE ModelSnapshot: " + url);
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.DELETE),
+        return executeRequest(newRequest(url, HttpMethod.DELETE),
                 "deleting snapshot");
     }
 
+    /**
+     * Create a request for an API call with the configured request
+     * timeout. Data uploads, log downloads and alert long polls do not
+     * use this as they may legitimately take far longer than any API call.
+     */
+    private Request newRequest(String url, HttpMethod method)
+    {
+        return applyTimeout(m_HttpClient.newRequest(url).method(method));
+    }
+
+    private Request newRequest(URI uri, HttpMethod method)
+    {
+        return applyTimeout(m_HttpClient.newRequest(uri).method(method));
+    }
+
+    private Request applyTimeout(Request request)
+    {
+        if (m_RequestTimeoutMs > 0)
+        {
+            request.timeout(m_RequestTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return request;
+    }
+
     private ContentResponse executeRequest(Request request) throws IOException
     {
         try
@@ -599,14 +721,14 @@ public class EngineApiClient implements Closeable
 
         if (response.getStatus() == HttpStatus.OK_200)
         {
-            m_LastError = null;
+            m_LastError.set(null);
             return true;
         }
         String content = response.getContentAsString();
         String msg = String.format("Error %s. Status code = %d, Returned content: %s",
                 activityDescription, response.getStatus(), content);
         LOGGER.error(msg);
-        m_LastError = m_JsonMapper.readValue(content, new TypeReference<ApiError>() {} );
+        m_LastError.set(m_JsonMapper.readValue(content, new TypeReference<ApiError>() {} ));
         return false;
     }
 
@@ -622,7 +744,7 @@ public class EngineApiClient implements Closeable
         String url = m_BaseUrl + "/jobs/" + encode(jobId);
         LOGGER.debug("DELETE job: " + url);
 
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.DELETE),
+        return executeRequest(newRequest(url, HttpMethod.DELETE),
                 "deleting job");
     }
 
@@ -639,7 +761,7 @@ public class EngineApiClient implements Closeable
     {
         String url = m_BaseUrl + "/jobs/" + encode(jobId) + "/pause";
         LOGGER.debug("Pause job: " + url);
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.POST),
+        return executeRequest(newRequest(url, HttpMethod.POST),
                 "pausing job");
     }
 
@@ -655,7 +777,7 @@ public class EngineApiClient implements Closeable
     {
         String url = m_BaseUrl + "/jobs/" + encode(jobId) + "/resume";
         LOGGER.debug("Resume job: " + url);
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.POST),
+        return executeRequest(newRequest(url, HttpMethod.POST),
                 "resuming job");
     }
 
@@ -671,7 +793,7 @@ public class EngineApiClient implements Closeable
     {
         String url = m_BaseUrl + "/schedulers/" + encode(jobId) + "/start";
         LOGGER.debug("Start scheduler: " + url);
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.POST),
+        return executeRequest(newRequest(url, HttpMethod.POST),
                 "starting scheduler");
     }
 
@@ -690,7 +812,7 @@ public class EngineApiClient implements Closeable
         String url = String.format("%s/schedulers/%s/start?start=%s&end=%s", m_BaseUrl,
                 encode(jobId), encode(start), encode(end));
         LOGGER.debug("Start scheduler: " + url);
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.POST),
+        return executeRequest(newRequest(url, HttpMethod.POST),
                 "starting scheduler");
     }
 
@@ -706,16 +828,15 @@ public class EngineApiClient implements Closeable
     {
         String url = m_BaseUrl + "/schedulers/" + encode(jobId) + "/stop";
         LOGGER.debug("Stop scheduler: " + url);
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.POST),
+        return executeRequest(newRequest(url, HttpMethod.POST),
                 "stopping scheduler");
     }
 
     /**
-     * Read the input stream in 4Mb chunks and upload making a new connection
-     * for each chunk.
-     * The data is not set line-by-line or broken in chunks on newline
-     * boundaries; it is sent in fixed size blocks. The API will manage
-     * reconstructing the records from the chunks.
+     * Read the input stream in 4Mb chunks and upload making a new request
+     * for each chunk. The data must not have a header line: use
+     * {@link #chunkedUpload(String, InputStream, DataDescription)} for
+     * delimited data so the header is sent with every chunk.
      *
      * @param jobId The Job's unique Id
      * @param inputStream The data to write to the web service
@@ -725,48 +846,115 @@ public class EngineApiClient implements Closeable
      */
     public MultiDataPostResult chunkedUpload(String jobId, InputStream inputStream)
             throws IOException
+    {
+        return chunkedUpload(jobId, inputStream, null);
+    }
+
+    /**
+     * Read the input stream in 4Mb chunks and upload making a new request
+     * for each chunk. Equivalent to
+     * {@link #chunkedUpload(String, InputStream, DataDescription, int, int)}
+     * reading two chunks ahead and retrying a failed chunk three times.
+     *
+     * @param jobId The Job's unique Id
+     * @param inputStream The data to write to the web service
+     * @param dataDescription The format of the data, which must match the
+     * job's data description, or <code>null</code> if the data has no header
+     * @return the multiple data upload results in {@linkplain MultiDataPostResult}
+     * @throws IOException If HTTP POST fails
+     * @see #streamingUpload(String, InputStream, boolean)
+     */
+    public MultiDataPostResult chunkedUpload(String jobId, InputStream inputStream,
+            DataDescription dataDescription)
+    throws IOException
+    {
+        return chunkedUpload(jobId, inputStream, dataDescription, DEFAULT_CHUNKS_AHEAD,
+                DEFAULT_CHUNK_RETRIES);
+    }
+
+    /**
+     * Read the input stream in chunks of about 4Mb and upload making a new
+     * request for each chunk. Chunks are cut on newline boundaries so every
+     * request contains whole records; a record longer than 4Mb is sent in a
+     * chunk of its own. Records must be newline terminated and must not
+     * contain embedded newlines, JSON data must have one document per line.
+     * For delimited data the header line is read once and sent at the start
+     * of every chunk, as the engine parses each request as a separate
+     * stream with its own header.
+     * <br>
+     * A background thread reads up to <code>chunksAhead</code> chunks from
+     * the stream while the current chunk is being posted. The engine does
+     * not accept concurrent uploads to a job so the chunks are posted one
+     * after the other in the order they were read.
+     * <br>
+     * A chunk that fails with a connection error or a 502, 503 or 504
+     * status is retried up to <code>maxRetries</code> times with an
+     * increasing delay. The upload stops at the first chunk that still
+     * fails and the result holds the counts summed over the chunks the
+     * engine accepted together with the failing chunk's error.
+     * <br>
+     * If a failed chunk had in fact reached the engine its records are
+     * sent again. The engine only discards records older than the job's
+     * latest record time, less any latency window, as out of order:
+     * records at the latest record time or within the latency window
+     * are processed again.
+     *
+     * @param jobId The Job's unique Id
+     * @param inputStream The data to write to the web service
+     * @param dataDescription The format of the data, which must match the
+     * job's data description, or <code>null</code> if the data has no header
+     * @param chunksAhead The number of chunks read ahead of the upload
+     * @param maxRetries The number of times a failed chunk is retried
+     * @return The data counts summed over all chunks, and the error of
+     * the chunk that failed if any, in {@linkplain MultiDataPostResult}
+     * @throws IOException If reading the stream or HTTP POST fails
+     * @see #streamingUpload(String, InputStream, boolean)
+     */
+    public MultiDataPostResult chunkedUpload(String jobId, InputStream inputStream,
+            DataDescription dataDescription, int chunksAhead, int maxRetries)
+    throws IOException
     {
         String postUrl = m_BaseUrl + "/data/" + encode(jobId);
         LOGGER.debug("Uploading chunked data to " + postUrl);
 
-        byte [] buffer = new byte[MAX_BUFFER_SIZE];
-        int uploadCount = 0;
-        MultiDataPostResult uploadSummary = new MultiDataPostResult();
+        m_LastError.set(null);
 
-        m_LastError = null;
-        while (inputStream.read(buffer) > -1)
+        RecordChunker chunker = new RecordChunker(inputStream, dataDescription,
+                MAX_BUFFER_SIZE);
+        // A single reader thread so the chunks are read in order
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try
         {
-            LOGGER.info("Upload " + ++uploadCount);
-
-            Request request = m_HttpClient.POST(postUrl)
-                    .header(HttpHeader.CONTENT_TYPE, "application/octet-stream")
-                    .content(new BytesContentProvider(buffer));
-            ContentResponse response = executeRequest(request);
-
-            String content = response.getContentAsString();
-
-            if (response.getStatus() != HttpStatus.ACCEPTED_202)
+            Deque<Future<ByteBuffer>> readAhead = new ArrayDeque<>();
+            for (int i = 0; i < Math.max(1, chunksAhead); i++)
             {
-                String msg = String.format(
-                        "Upload of chunk %d failed, status code = %d. Returned content: %s",
-                        uploadCount, response.getStatus(), content);
-
-                LOGGER.error(msg);
+                readAhead.add(reader.submit(chunker::next));
+            }
 
-                uploadSummary = convertMultiDataPostResponse(content);
+            DataCounts totalCounts = new DataCounts();
+            int chunkCount = 0;
+            ByteBuffer records;
+            while ((records = awaitPiece(readAhead.poll())) != null)
+            {
+                readAhead.add(reader.submit(chunker::next));
 
-                if (m_LastError == null)
+                MultiDataPostResult result = postRecords(postUrl, records, ++chunkCount,
+                        maxRetries);
+                if (m_LastError.get() != null || result.anErrorOccurred())
                 {
-                    m_LastError = newUnknownError(msg);
+                    return failedUploadResult(jobId, totalCounts, result);
                 }
+                mergeCounts(result, totalCounts);
             }
-            else
-            {
-                uploadSummary = m_JsonMapper.readValue(content, new TypeReference<MultiDataPostResult>() {});
-            }
-        }
 
-        return uploadSummary;
+            MultiDataPostResult uploadSummary = new MultiDataPostResult();
+            uploadSummary.addResult(new DataPostResponse(jobId, totalCounts));
+            return uploadSummary;
+        }
+        finally
+        {
+            reader.shutdownNow();
+        }
     }
 
     /**
@@ -806,6 +994,39 @@ public class EngineApiClient implements Closeable
     public MultiDataPostResult streamingUpload(String jobId, InputStream inputStream, boolean compressed,
             String resetStart, String resetEnd)
     throws IOException
+    {
+        String postUrl = dataUrl(jobId, resetStart, resetEnd);
+        return uploadStream(inputStream, postUrl, compressed, new MultiDataPostResult(), true,
+                content -> convertMultiDataPostResponse(content));
+    }
+
+    /**
+     * Gzip compress the raw data in <code>inputStream</code> as it is
+     * streamed to the service. This trades client CPU for bandwidth:
+     * the data is compressed by a separate thread while the next part
+     * of the input is read, and is sent with a <code>gzip</code>
+     * content encoding. The input must not already be compressed.
+     *
+     * @param jobId The Job's unique Id
+     * @param inputStream The uncompressed data to write to the web service
+     * @param compressionLevel The deflate level from 0 (no compression) to 9
+     * (best compression) or -1 for the default level
+     * @return the multiple data upload results in {@linkplain MultiDataPostResult}
+     * @throws IOException If compressing or HTTP POST fails
+     * @see #streamingUpload(String, InputStream, boolean)
+     */
+    public MultiDataPostResult compressingUpload(String jobId, InputStream inputStream,
+            int compressionLevel)
+    throws IOException
+    {
+        String postUrl = dataUrl(jobId, "", "");
+        return uploadContent(postUrl, true, new MultiDataPostResult(), true,
+                content -> convertMultiDataPostResponse(content),
+                new GzipContentWriter(inputStream, m_BufferPool, m_UploadFlowController,
+                        compressionLevel));
+    }
+
+    private String dataUrl(String jobId, String resetStart, String resetEnd)
     {
         String postUrl = String.format("%s/data/%s", m_BaseUrl, encode(jobId));
         if (!Strings.isNullOrEmpty(resetStart) || !Strings.isNullOrEmpty(resetEnd))
@@ -813,8 +1034,7 @@ public class EngineApiClient implements Closeable
             postUrl += String.format("?resetStart=%s&resetEnd=%s",
                     Strings.nullToEmpty(resetStart), Strings.nullToEmpty(resetEnd));
         }
-        return uploadStream(inputStream, postUrl, compressed, new MultiDataPostResult(), true,
-                content -> convertMultiDataPostResponse(content));
+        return postUrl;
     }
 
     /**
@@ -837,6 +1057,493 @@ public class EngineApiClient implements Closeable
                 content -> convertMultiDataPostResponse(content));
     }
 
+    /**
+     * Read records from a single <code>inputStream</code> holding data for
+     * many jobs and upload each record to the job <code>router</code>
+     * chooses for it. Each record is parsed once, the uploads to all the
+     * target jobs run concurrently and the result holds the data counts
+     * or error of every job. For delimited data the header line is sent
+     * at the start of every job's upload.
+     * <br>
+     * Records must be newline terminated and must not contain embedded
+     * newlines; JSON data must have one document per line. The data must
+     * not be compressed. Each job has its own HTTP connection so the
+     * number of jobs is limited to the HTTP client's maximum connections
+     * per destination (see {@link EngineApiClientBuilder#maxConnectionsPerDestination(int)}).
+     * If other requests hold connections, such as alert long polls or
+     * other uploads, a job's upload waits up to the connect timeout to
+     * start and the routed upload fails if it does not.
+     * Records the router does not route to a job are dropped.
+     * <br>
+     * The unsent bytes of each job are limited to its share of the
+     * client's {@link UploadFlowController} limit. The jobs have their
+     * own limits so a job that reads slowly only holds up the records
+     * routed to it, and these uploads do not appear in the client
+     * controller's metrics.
+     *
+     * @param inputStream The records to route
+     * @param dataDescription The data description shared by all the jobs
+     * @param router Chooses the job for each record
+     * @return the multiple data upload results in {@linkplain MultiDataPostResult}
+     * @throws IOException If reading the stream fails, there are more
+     * jobs than connections or a job's upload cannot start
+     */
+    public MultiDataPostResult routedUpload(InputStream inputStream,
+            DataDescription dataDescription, RecordRouter router)
+    throws IOException
+    {
+        if (!RecordSplitter.isSplittable(dataDescription.getFormat()))
+        {
+            throw new IllegalArgumentException("Data in format " + dataDescription.getFormat()
+                    + " cannot be split on record boundaries");
+        }
+
+        m_LastError.set(null);
+
+        BufferPool bufferPool = m_BufferPool;
+        int maxJobs = m_HttpClient.getMaxConnectionsPerDestination();
+        // Each job has its own share of the client's in flight limit so
+        // the single reader is never held up by a job it is not writing to
+        long jobInFlightBytes = Math.max(2L * bufferPool.getBufferSize(),
+                m_UploadFlowController.getMaxInFlightBytes() / maxJobs);
+        Map<String, RoutedStream> streams = new LinkedHashMap<>();
+        long droppedCount = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(inputStream, StandardCharsets.UTF_8)))
+        {
+            String header = null;
+            byte [] headerBytes = new byte[0];
+            if (dataDescription.getFormat() == DataFormat.DELIMITED)
+            {
+                header = reader.readLine();
+                if (header == null)
+                {
+                    return new MultiDataPostResult();
+                }
+                headerBytes = (header + DataDescription.LINE_ENDING).getBytes(StandardCharsets.UTF_8);
+            }
+
+            Function<String, String> route = router.newRoute(dataDescription, header,
+                    m_JsonMapper.getFactory());
+            String record;
+            while ((record = reader.readLine()) != null)
+            {
+                String jobId = route.apply(record);
+                if (jobId == null)
+                {
+                    droppedCount++;
+                    continue;
+                }
+
+                RoutedStream stream = streams.get(jobId);
+                if (stream == null)
+                {
+                    if (streams.size() >= maxJobs)
+                    {
+                        throw new IOException("Cannot route records to more than " + maxJobs
+                                + " jobs, the maximum connections per destination");
+                    }
+                    String postUrl = dataUrl(jobId, null, null);
+                    LOGGER.debug("Uploading routed data to " + postUrl);
+                    Request request = m_HttpClient.POST(postUrl)
+                            .header(HttpHeader.CONTENT_TYPE, "application/octet-stream");
+                    stream = new RoutedStream(jobId, request, bufferPool,
+                            new UploadFlowController(jobInFlightBytes), headerBytes,
+                            m_HttpClient.getConnectTimeout());
+                    streams.put(jobId, stream);
+                }
+                stream.writeRecord(record.getBytes(StandardCharsets.UTF_8));
+            }
+
+            for (RoutedStream stream : streams.values())
+            {
+                stream.close();
+            }
+        }
+        catch (IOException | RuntimeException e)
+        {
+            for (RoutedStream stream : streams.values())
+            {
+                stream.abort(e);
+            }
+            throw e;
+        }
+
+        if (droppedCount > 0)
+        {
+            LOGGER.warn(droppedCount + " records were not routed to any job");
+        }
+
+        MultiDataPostResult combined = new MultiDataPostResult();
+        for (RoutedStream stream : streams.values())
+        {
+            int status = stream.awaitStatus();
+            String content = stream.getContent();
+            if (status == HttpStatus.ACCEPTED_202)
+            {
+                combined.getResponses().addAll(convertMultiDataPostResponse(content).getResponses());
+                continue;
+            }
+
+            String msg = String.format(
+                    "Routed upload to %s failed, status code = %d. Returned content: %s",
+                    stream.getJobId(), status, content);
+            LOGGER.error(msg);
+
+            ApiError error;
+            try
+            {
+                error = m_JsonMapper.readValue(content, new TypeReference<ApiError>() {});
+            }
+            catch (IOException e)
+            {
+                error = newUnknownError(msg);
+            }
+            combined.addResult(new DataPostResponse(stream.getJobId(), error));
+            if (m_LastError.get() == null)
+            {
+                m_LastError.set(error);
+            }
+        }
+        return combined;
+    }
+
+    /**
+     * Upload the contents of <code>dataFile</code> split into pieces that
+     * end on record boundaries. The pieces are read from the file by
+     * <code>parallelism</code> threads, each working ahead of the upload,
+     * and are sent in file order one HTTP POST per piece. The data counts
+     * of all the pieces are merged into a single result.
+     * <br>
+     * The Engine API only accepts one data stream for a job at a time
+     * (see {@link ErrorCodes#NATIVE_PROCESS_CONCURRENT_USE_ERROR}) so while
+     * pieces are read concurrently they are posted one after the other
+     * and the records reach the job in the same order as in the file.
+     * <br>
+     * Records must be newline terminated and must not contain embedded
+     * newlines; JSON data must have one document per line. For delimited
+     * data the header line is sent at the start of every piece. Data in a
+     * format that cannot be split on newlines, or gzip compressed data,
+     * should be uploaded with {@link #fileUpload(String, File, boolean)}.
+     *
+     * @param jobId The Job's unique Id
+     * @param dataFile Uncompressed data matching the job's data description
+     * @param dataDescription The job's data description
+     * @param parallelism The number of threads reading pieces of the file,
+     * must be at least 1
+     * @return The data counts summed over all pieces in {@linkplain MultiDataPostResult}.
+     * If a piece fails the upload stops and the result holds the counts of
+     * the pieces sent before it together with its error.
+     * @throws IOException If reading the file or HTTP POST fails
+     */
+    public MultiDataPostResult parallelUpload(String jobId, File dataFile,
+            DataDescription dataDescription, int parallelism)
+    throws IOException
+    {
+        if (parallelism < 1)
+        {
+            throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+        }
+        if (!RecordSplitter.isSplittable(dataDescription.getFormat()))
+        {
+            throw new IllegalArgumentException("Data in format " + dataDescription.getFormat()
+                    + " cannot be split on record boundaries");
+        }
+
+        String postUrl = String.format("%s/data/%s", m_BaseUrl, encode(jobId));
+        LOGGER.debug("Uploading data in parallel to " + postUrl);
+
+        m_LastError.set(null);
+
+        ExecutorService readers = Executors.newFixedThreadPool(parallelism);
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ))
+        {
+            RecordSplitter splitter = new RecordSplitter(channel, dataDescription, MAX_BUFFER_SIZE);
+            List<RecordSplitter.Piece> pieces = splitter.getPieces();
+
+            // Read ahead at most one piece per reader thread
+            Deque<Future<ByteBuffer>> readAhead = new ArrayDeque<>();
+            int nextPiece = 0;
+            while (nextPiece < pieces.size() && readAhead.size() < parallelism)
+            {
+                RecordSplitter.Piece piece = pieces.get(nextPiece++);
+                readAhead.add(readers.submit(() -> splitter.read(piece)));
+            }
+
+            DataCounts totalCounts = new DataCounts();
+            int pieceCount = 0;
+            while (!readAhead.isEmpty())
+            {
+                ByteBuffer records = awaitPiece(readAhead.poll());
+                if (nextPiece < pieces.size())
+                {
+                    RecordSplitter.Piece piece = pieces.get(nextPiece++);
+                    readAhead.add(readers.submit(() -> splitter.read(piece)));
+                }
+
+                MultiDataPostResult result = postRecords(postUrl, records, ++pieceCount, 0);
+                if (m_LastError.get() != null || result.anErrorOccurred())
+                {
+                    return failedUploadResult(jobId, totalCounts, result);
+                }
+                mergeCounts(result, totalCounts);
+            }
+
+            MultiDataPostResult uploadSummary = new MultiDataPostResult();
+            uploadSummary.addResult(new DataPostResponse(jobId, totalCounts));
+            return uploadSummary;
+        }
+        finally
+        {
+            readers.shutdownNow();
+        }
+    }
+
+    /**
+     * Upload a data file so that an upload that fails part way through can
+     * be restarted where it stopped. The file is split into pieces of about
+     * 4Mb on record boundaries as in {@link #parallelUpload(String, File, DataDescription, int)}
+     * and after the engine acknowledges each piece the offset of the next
+     * record, the latest record time and the counts so far are written to
+     * <code>checkpointFile</code>.
+     * <br>
+     * If <code>checkpointFile</code> exists when the upload starts the
+     * upload skips straight to the checkpoint's offset without reading or
+     * sending the data before it. The checkpoint must be for the same job
+     * and a file of the same length. The checkpoint file is deleted once
+     * the whole file has been uploaded and is kept if the upload fails.
+     * <br>
+     * The data file must not be compressed and its records must be newline
+     * terminated, as for <code>parallelUpload</code>.
+     *
+     * @param jobId The Job's unique Id
+     * @param dataFile Uncompressed data matching the job's data description
+     * @param dataDescription The job's data description
+     * @param checkpointFile The file to record the upload's progress in
+     * @return The counts of all the records uploaded to the job, including
+     * those uploaded before a restart, in {@linkplain MultiDataPostResult}
+     * @throws IOException If reading the file or checkpoint or HTTP POST fails
+     * @throws IllegalStateException If the checkpoint is for a different job or file
+     */
+    public MultiDataPostResult resumableUpload(String jobId, File dataFile,
+            DataDescription dataDescription, File checkpointFile)
+    throws IOException
+    {
+        if (!RecordSplitter.isSplittable(dataDescription.getFormat()))
+        {
+            throw new IllegalArgumentException("Data in format " + dataDescription.getFormat()
+                    + " cannot be split on record boundaries");
+        }
+
+        String postUrl = String.format("%s/data/%s", m_BaseUrl, encode(jobId));
+
+        m_LastError.set(null);
+
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ))
+        {
+            long fileLength = channel.size();
+            UploadCheckpoint checkpoint = UploadCheckpoint.read(checkpointFile, m_JsonMapper);
+            if (checkpoint == null)
+            {
+                checkpoint = new UploadCheckpoint(jobId, fileLength);
+            }
+            else if (!jobId.equals(checkpoint.getJobId()) || checkpoint.getFileLength() != fileLength)
+            {
+                throw new IllegalStateException("Checkpoint " + checkpointFile + " is for job "
+                        + checkpoint.getJobId() + " and a file of " + checkpoint.getFileLength()
+                        + " bytes not job " + jobId + " and a file of " + fileLength + " bytes");
+            }
+            else
+            {
+                LOGGER.info("Resuming upload to " + jobId + " at offset " + checkpoint.getOffset()
+                        + ", latest record time " + checkpoint.getLatestRecordTimeStamp());
+            }
+
+            LOGGER.debug("Uploading resumable data to " + postUrl);
+
+            RecordSplitter splitter = new RecordSplitter(channel, dataDescription, MAX_BUFFER_SIZE,
+                    checkpoint.getOffset());
+            List<RecordSplitter.Piece> pieces = splitter.getPieces();
+
+            Future<ByteBuffer> readAhead = pieces.isEmpty() ? null
+                    : reader.submit(() -> splitter.read(pieces.get(0)));
+            for (int i = 0; i < pieces.size(); i++)
+            {
+                ByteBuffer records = awaitPiece(readAhead);
+                if (i + 1 < pieces.size())
+                {
+                    RecordSplitter.Piece next = pieces.get(i + 1);
+                    readAhead = reader.submit(() -> splitter.read(next));
+                }
+
+                MultiDataPostResult result = postRecords(postUrl, records, i + 1,
+                        DEFAULT_CHUNK_RETRIES);
+                if (m_LastError.get() != null || result.anErrorOccurred())
+                {
+                    return result;
+                }
+
+                DataCounts pieceCounts = new DataCounts();
+                mergeCounts(result, pieceCounts);
+                RecordSplitter.Piece piece = pieces.get(i);
+                checkpoint.acknowledge(piece.getOffset() + piece.getLength(), pieceCounts);
+                checkpoint.write(checkpointFile, m_JsonMapper);
+            }
+
+            Files.deleteIfExists(checkpointFile.toPath());
+
+            MultiDataPostResult uploadSummary = new MultiDataPostResult();
+            uploadSummary.addResult(new DataPostResponse(jobId, checkpoint.getCounts()));
+            return uploadSummary;
+        }
+        finally
+        {
+            reader.shutdownNow();
+        }
+    }
+
+    private static ByteBuffer awaitPiece(Future<ByteBuffer> piece) throws IOException
+    {
+        try
+        {
+            return piece.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static void mergeCounts(MultiDataPostResult result, DataCounts totalCounts)
+    {
+        for (DataPostResponse response : result.getResponses())
+        {
+            if (response.getUploadSummary() != null)
+            {
+                totalCounts.merge(response.getUploadSummary());
+            }
+        }
+    }
+
+    /**
+     * The counts of the pieces of an upload the engine accepted, added to
+     * any counts in the result of the piece that failed, together with
+     * that piece's error
+     */
+    private MultiDataPostResult failedUploadResult(String jobId, DataCounts totalCounts,
+            MultiDataPostResult failed)
+    {
+        mergeCounts(failed, totalCounts);
+
+        ApiError error = m_LastError.get();
+        for (DataPostResponse response : failed.getResponses())
+        {
+            if (response.getError() != null)
+            {
+                error = response.getError();
+                break;
+            }
+        }
+
+        DataPostResponse response = new DataPostResponse(jobId, totalCounts);
+        response.setError(error);
+        MultiDataPostResult result = new MultiDataPostResult();
+        result.addResult(response);
+        return result;
+    }
+
+    /**
+     * POST a complete set of records in a single request, retrying
+     * connection errors and gateway or unavailable responses up to
+     * <code>maxRetries</code> times
+     */
+    private MultiDataPostResult postRecords(String postUrl, ByteBuffer records, int pieceNumber,
+            int maxRetries)
+    throws IOException
+    {
+        LOGGER.debug("Upload piece " + pieceNumber + " of " + records.remaining() + " bytes");
+
+        for (int attempt = 0; ; attempt++)
+        {
+            ContentResponse response;
+            try
+            {
+                // Each attempt sends from the start of the records
+                Request request = m_HttpClient.POST(postUrl)
+                        .header(HttpHeader.CONTENT_TYPE, "application/octet-stream")
+                        .content(new ByteBufferContentProvider(records.duplicate()));
+                response = executeRequest(request);
+            }
+            catch (IOException e)
+            {
+                if (attempt >= maxRetries)
+                {
+                    throw e;
+                }
+                LOGGER.warn("Upload of piece " + pieceNumber + " failed, retrying", e);
+                awaitRetry(attempt);
+                continue;
+            }
+
+            if (isTransientFailure(response.getStatus()) && attempt < maxRetries)
+            {
+                LOGGER.warn("Upload of piece " + pieceNumber + " failed with status "
+                        + response.getStatus() + ", retrying");
+                awaitRetry(attempt);
+                continue;
+            }
+
+            String content = response.getContentAsString();
+            if (response.getStatus() != HttpStatus.ACCEPTED_202)
+            {
+                String msg = String.format(
+                        "Upload of piece %d failed, status code = %d. Returned content: %s",
+                        pieceNumber, response.getStatus(), content);
+                LOGGER.error(msg);
+
+                MultiDataPostResult result = Strings.isNullOrEmpty(content) ? new MultiDataPostResult()
+                        : convertMultiDataPostResponse(content);
+                if (m_LastError.get() == null)
+                {
+                    m_LastError.set(newUnknownError(msg));
+                }
+                return result;
+            }
+
+            return convertMultiDataPostResponse(content);
+        }
+    }
+
+    private static boolean isTransientFailure(int status)
+    {
+        return status == HttpStatus.BAD_GATEWAY_502 || status == HttpStatus.SERVICE_UNAVAILABLE_503
+                || status == HttpStatus.GATEWAY_TIMEOUT_504;
+    }
+
+    private static void awaitRetry(int attempt) throws IOException
+    {
+        long delay = CHUNK_RETRY_DELAY_MS << Math.min(attempt, 6);
+        try
+        {
+            Thread.sleep(delay);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
     private MultiDataPostResult convertMultiDataPostResponse(String content) throws IOException
     {
         MultiDataPostResult uploadSummary = m_JsonMapper.readValue(content, new TypeReference<MultiDataPostResult>() {});
@@ -844,27 +1551,112 @@ public class EngineApiClient implements Closeable
         {
             if (dpr.getError() != null)
             {
-                m_LastError = dpr.getError();
-                break;
+                m_LastError.set(dpr.getError());
+                break;
+            }
+        }
+        return uploadSummary;
+    }
+
+    @FunctionalInterface
+    private interface FunctionThatThrowsIoException<T, R>
+    {
+        R apply(T input) throws IOException;
+    }
+
+    private <T> T uploadStream(InputStream inputStream, String postUrl, boolean compressed,
+            T defaultReturnValue, boolean convertResponseOnError,
+            FunctionThatThrowsIoException<String, T> convertContentFunction)
+    throws IOException
+    {
+        return uploadContent(postUrl, compressed, defaultReturnValue, convertResponseOnError,
+                convertContentFunction, (contentProvider, requestActive) ->
+        {
+            BufferPool bufferPool = m_BufferPool;
+            UploadFlowController flowController = m_UploadFlowController;
+            ByteBuffer buffer = bufferPool.acquire();
+            try
+            {
+                int bytesRead = 0;
+                while ((bytesRead = inputStream.read(buffer.array(), buffer.arrayOffset(),
+                                                     buffer.capacity())) > -1
+                        && requestActive.getAsBoolean())
+                {
+                    // Wait for earlier buffers to be sent rather than queue without limit
+                    if (!flowController.acquire(bytesRead, requestActive))
+                    {
+                        break;
+                    }
+                    buffer.limit(bytesRead);
+                    contentProvider.offer(buffer, flowController.releaseCallback(bytesRead,
+                            bufferPool.releaseCallback(buffer)));
+                    buffer = bufferPool.acquire();
+                }
+            }
+            finally
+            {
+                bufferPool.release(buffer);
+                inputStream.close();
             }
-        }
-        return uploadSummary;
+        });
     }
 
-    @FunctionalInterface
-    private interface FunctionThatThrowsIoException<T, R>
+    /**
+     * Upload the file by memory mapping it and offering read-only slices
+     * of the mapping to the request. The file contents are never copied
+     * onto the heap. Slices are reserved from the upload flow controller
+     * so only the regions holding unsent slices are kept mapped rather
+     * than the whole file.
+     */
+    private <T> T uploadFile(File dataFile, String postUrl, boolean compressed,
+            T defaultReturnValue, boolean convertResponseOnError,
+            FunctionThatThrowsIoException<String, T> convertContentFunction)
+    throws IOException
     {
-        R apply(T input) throws IOException;
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ))
+        {
+            return uploadContent(postUrl, compressed, defaultReturnValue, convertResponseOnError,
+                    convertContentFunction, (contentProvider, requestActive) ->
+            {
+                UploadFlowController flowController = m_UploadFlowController;
+                long size = channel.size();
+                long regionStart = 0;
+                while (regionStart < size && requestActive.getAsBoolean())
+                {
+                    long regionLength = Math.min(MAPPED_REGION_SIZE, size - regionStart);
+                    MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                            regionStart, regionLength);
+
+                    int sliceStart = 0;
+                    while (sliceStart < regionLength && requestActive.getAsBoolean())
+                    {
+                        int sliceEnd = (int) Math.min(regionLength, (long) sliceStart + MAX_BUFFER_SIZE);
+                        int sliceLength = sliceEnd - sliceStart;
+                        if (!flowController.acquire(sliceLength, requestActive))
+                        {
+                            return;
+                        }
+                        ByteBuffer slice = region.duplicate();
+                        slice.limit(sliceEnd).position(sliceStart);
+                        contentProvider.offer(slice.slice().asReadOnlyBuffer(),
+                                flowController.releaseCallback(sliceLength, Callback.NOOP));
+                        sliceStart = sliceEnd;
+                    }
+                    regionStart += regionLength;
+                }
+            });
+        }
     }
 
-    private <T, E> T uploadStream(InputStream inputStream, String postUrl, boolean compressed,
+    private <T> T uploadContent(String postUrl, boolean compressed,
             T defaultReturnValue, boolean convertResponseOnError,
-            FunctionThatThrowsIoException<String, T> convertContentFunction)
+            FunctionThatThrowsIoException<String, T> convertContentFunction,
+            ContentWriter contentWriter)
     throws IOException
     {
         LOGGER.debug("Uploading data to " + postUrl);
 
-        m_LastError = null;
+        m_LastError.set(null);
 
         // It is possible that the server replies with an error and closes the stream.
         // In that case, there could be a case where a thread that writes into the inputStream
@@ -892,17 +1684,15 @@ public class EngineApiClient implements Closeable
         };
         request.send(responseListener);
 
-        byte[] buffer = new byte[MAX_BUFFER_SIZE];
-        int bytesRead = 0;
-        while ((bytesRead = inputStream.read(buffer)) > -1
-                && !contentProvider.isClosed()
-                && waitUntilRequestCompletesLatch.getCount() > 0)
+        try
         {
-            contentProvider.offer(ByteBuffer.wrap(buffer, 0, bytesRead));
-            buffer = new byte[chooseBufferSize(bytesRead, buffer.length)];
+            contentWriter.write(contentProvider, () -> !contentProvider.isClosed()
+                    && waitUntilRequestCompletesLatch.getCount() > 0);
+        }
+        finally
+        {
+            contentProvider.close();
         }
-        contentProvider.close();
-        inputStream.close();
 
         try
         {
@@ -931,11 +1721,11 @@ public class EngineApiClient implements Closeable
                     // In this case convertContentFunction must set m_LastError
                     return convertContentFunction.apply(content);
                 }
-                m_LastError = m_JsonMapper.readValue(content, new TypeReference<ApiError>() {});
+                m_LastError.set(m_JsonMapper.readValue(content, new TypeReference<ApiError>() {}));
             }
             else
             {
-                m_LastError = newUnknownError(msg);
+                m_LastError.set(newUnknownError(msg));
             }
 
             return defaultReturnValue;
@@ -943,22 +1733,10 @@ public class EngineApiClient implements Closeable
         return convertContentFunction.apply(content);
     }
 
-    private static int chooseBufferSize(int bytesRead, int currentBufferSize)
-    {
-        if (bytesRead >= MAX_BUFFER_SIZE)
-        {
-            return MAX_BUFFER_SIZE;
-        }
-        if (bytesRead < currentBufferSize)
-        {
-            return bytesRead;
-        }
-        int growth = Math.max(MIN_BUFFER_GROWTH, (int) (BUFFER_GROWTH_FACTOR * currentBufferSize));
-        return Math.min(MAX_BUFFER_SIZE, currentBufferSize + growth);
-    }
-
     /**
      * Upload the contents of <code>dataFile</code> to the server.
+     * The file is memory mapped and uploaded without copying its
+     * contents onto the heap.
      *
      * @param jobId The Job's Id
      * @param dataFile Should match the data configuration format of the job
@@ -969,13 +1747,13 @@ public class EngineApiClient implements Closeable
     public MultiDataPostResult fileUpload(String jobId, File dataFile, boolean compressed)
     throws IOException
     {
-        FileInputStream stream = new FileInputStream(dataFile);
-
-        return streamingUpload(jobId, stream, compressed);
+        return fileUpload(jobId, dataFile, compressed, "", "");
     }
 
     /**
      * Upload the contents of <code>dataFile</code> to the server.
+     * The file is memory mapped and uploaded without copying its
+     * contents onto the heap.
      *
      * @param jobId The Job's Id
      * @param dataFile Should match the data configuration format of the job
@@ -988,9 +1766,9 @@ public class EngineApiClient implements Closeable
     public MultiDataPostResult fileUpload(String jobId, File dataFile, boolean compressed,
             String resetStart, String resetEnd) throws IOException
     {
-        FileInputStream stream = new FileInputStream(dataFile);
-
-        return streamingUpload(jobId, stream, compressed, resetStart, resetEnd);
+        String postUrl = dataUrl(jobId, resetStart, resetEnd);
+        return uploadFile(dataFile, postUrl, compressed, new MultiDataPostResult(), true,
+                content -> convertMultiDataPostResponse(content));
     }
 
     /**
@@ -1073,7 +1851,7 @@ public class EngineApiClient implements Closeable
         }
         LOGGER.debug("Flushing job " + flushUrl);
 
-        ContentResponse response = executeRequest(m_HttpClient.POST(flushUrl));
+        ContentResponse response = executeRequest(newRequest(flushUrl, HttpMethod.POST));
         String content = response.getContentAsString();
 
         if (response.getStatus() != HttpStatus.OK_200)
@@ -1083,12 +1861,12 @@ public class EngineApiClient implements Closeable
                     jobId, response.getStatus(), content);
 
             LOGGER.error(msg);
-            m_LastError = m_JsonMapper.readValue(content,
-                    new TypeReference<ApiError>() {} );
+            m_LastError.set(m_JsonMapper.readValue(content,
+                    new TypeReference<ApiError>() {} ));
             return false;
         }
 
-        m_LastError = null;
+        m_LastError.set(null);
         return true;
     }
 
@@ -1106,7 +1884,7 @@ public class EngineApiClient implements Closeable
         String closeUrl = m_BaseUrl + "/data/" + encode(jobId) + "/close";
         LOGGER.debug("Closing job " + closeUrl);
 
-        ContentResponse response = executeRequest(m_HttpClient.POST(closeUrl));
+        ContentResponse response = executeRequest(newRequest(closeUrl, HttpMethod.POST));
         String content = response.getContentAsString();
 
         if (response.getStatus() != HttpStatus.ACCEPTED_202
@@ -1116,14 +1894,201 @@ public class EngineApiClient implements Closeable
                     "Error closing job %s, status code = %d. Returned content: %s",
                     jobId, response.getStatus(), content);
             LOGGER.error(msg);
-            m_LastError = m_JsonMapper.readValue(content, new TypeReference<ApiError>() {});
+            m_LastError.set(m_JsonMapper.readValue(content, new TypeReference<ApiError>() {}));
             return false;
         }
 
-        m_LastError = null;
+        m_LastError.set(null);
         return true;
     }
 
+    /**
+     * Pause many jobs, running up to <code>concurrency</code> requests
+     * at a time
+     *
+     * @param jobIds The jobs' unique IDs
+     * @param concurrency The maximum number of requests in progress
+     * @return The outcome for each job
+     * @see #pauseJob(String)
+     */
+    public BatchResult pauseJobs(Collection<String> jobIds, int concurrency)
+    {
+        return runBatch(jobIds, concurrency, m_AsyncClient::pauseJob);
+    }
+
+    /**
+     * Resume many paused jobs, running up to <code>concurrency</code>
+     * requests at a time
+     *
+     * @param jobIds The jobs' unique IDs
+     * @param concurrency The maximum number of requests in progress
+     * @return The outcome for each job
+     * @see #resumeJob(String)
+     */
+    public BatchResult resumeJobs(Collection<String> jobIds, int concurrency)
+    {
+        return runBatch(jobIds, concurrency, m_AsyncClient::resumeJob);
+    }
+
+    /**
+     * Start the schedulers of many jobs, running up to
+     * <code>concurrency</code> requests at a time
+     *
+     * @param jobIds The jobs' unique IDs
+     * @param concurrency The maximum number of requests in progress
+     * @return The outcome for each job
+     * @see #startScheduler(String)
+     */
+    public BatchResult startSchedulers(Collection<String> jobIds, int concurrency)
+    {
+        return runBatch(jobIds, concurrency, m_AsyncClient::startScheduler);
+    }
+
+    /**
+     * Stop the schedulers of many jobs, running up to
+     * <code>concurrency</code> requests at a time
+     *
+     * @param jobIds The jobs' unique IDs
+     * @param concurrency The maximum number of requests in progress
+     * @return The outcome for each job
+     * @see #stopScheduler(String)
+     */
+    public BatchResult stopSchedulers(Collection<String> jobIds, int concurrency)
+    {
+        return runBatch(jobIds, concurrency, m_AsyncClient::stopScheduler);
+    }
+
+    /**
+     * Flush many jobs, running up to <code>concurrency</code> requests
+     * at a time
+     *
+     * @param jobIds The jobs' unique IDs
+     * @param calcInterim Should interim results be calculated
+     * @param concurrency The maximum number of requests in progress
+     * @return The outcome for each job
+     * @see #flushJob(String, boolean)
+     */
+    public BatchResult flushJobs(Collection<String> jobIds, boolean calcInterim,
+            int concurrency)
+    {
+        return runBatch(jobIds, concurrency, jobId -> m_AsyncClient.flushJob(jobId, calcInterim));
+    }
+
+    /**
+     * Close many jobs, running up to <code>concurrency</code> requests
+     * at a time
+     *
+     * @param jobIds The jobs' unique IDs
+     * @param concurrency The maximum number of requests in progress
+     * @return The outcome for each job
+     * @see #closeJob(String)
+     */
+    public BatchResult closeJobs(Collection<String> jobIds, int concurrency)
+    {
+        return runBatch(jobIds, concurrency, m_AsyncClient::closeJob);
+    }
+
+    /**
+     * Apply <code>operation</code> to every job without waiting for each
+     * response before sending the next request. A semaphore limits the
+     * requests in progress to <code>concurrency</code>. A job listed more
+     * than once is only sent one request.
+     * <br>
+     * If the calling thread is interrupted no more requests are sent and
+     * the jobs whose requests were not sent or have not yet completed are
+     * reported as interrupted.
+     */
+    private BatchResult runBatch(Collection<String> jobIds, int concurrency,
+            Function<String, CompletableFuture<Boolean>> operation)
+    {
+        if (concurrency < 1)
+        {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+
+        Set<String> uniqueJobIds = new LinkedHashSet<>(jobIds);
+        Semaphore permits = new Semaphore(concurrency);
+        Map<String, CompletableFuture<Boolean>> outcomes = new LinkedHashMap<>();
+        boolean interrupted = false;
+        for (String jobId : uniqueJobIds)
+        {
+            try
+            {
+                permits.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+                break;
+            }
+
+            CompletableFuture<Boolean> outcome;
+            try
+            {
+                outcome = operation.apply(jobId);
+            }
+            catch (RuntimeException e)
+            {
+                outcome = failedFuture(e);
+            }
+            outcome.whenComplete((done, e) -> permits.release());
+            outcomes.put(jobId, outcome);
+        }
+
+        BatchResult result = new BatchResult();
+        for (String jobId : uniqueJobIds)
+        {
+            CompletableFuture<Boolean> outcome = outcomes.get(jobId);
+            if (outcome != null && !interrupted)
+            {
+                try
+                {
+                    outcome.get();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    // Recorded below
+                }
+            }
+
+            if (outcome == null || !outcome.isDone())
+            {
+                result.addInterrupted(jobId);
+                continue;
+            }
+
+            try
+            {
+                outcome.join();
+                result.addSuccess(jobId);
+            }
+            catch (CompletionException e)
+            {
+                Throwable cause = e.getCause();
+                result.addError(jobId, (cause instanceof EngineApiException)
+                        ? ((EngineApiException) cause).getApiError()
+                        : newUnknownError(String.valueOf(cause)));
+            }
+        }
+
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failedFuture(Throwable cause)
+    {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(cause);
+        return future;
+    }
+
     /**
      * Returns a {@link BucketsRequestBuilder} for the given job through which
      * the request can be configured and executed
@@ -1295,12 +2260,14 @@ public class EngineApiClient implements Closeable
      */
     private String getStringContent(String url) throws IOException
     {
-        ContentResponse response = executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.GET));
+        // Log files can be large so this is not limited by the request timeout
+        ContentResponse response = executeRequest(
+                m_HttpClient.newRequest(url).method(HttpMethod.GET));
         String content = response.getContentAsString();
 
         if (response.getStatus() == HttpStatus.OK_200)
         {
-            m_LastError = null;
+            m_LastError.set(null);
             return content;
         }
 
@@ -1308,7 +2275,7 @@ public class EngineApiClient implements Closeable
                 "Error reading string content. Status code = %d. Returned content: %s",
                 response.getStatus(), content);
         LOGGER.error(msg);
-        m_LastError = m_JsonMapper.readValue(content, new TypeReference<ApiError>() {});
+        m_LastError.set(m_JsonMapper.readValue(content, new TypeReference<ApiError>() {}));
         return "";
     }
 
@@ -1351,7 +2318,7 @@ public class EngineApiClient implements Closeable
 
         LOGGER.debug("GET download logs " + url);
 
-        m_LastError = null;
+        m_LastError.set(null);
         InputStreamResponseListener responseListener = new InputStreamResponseListener();
         Request request = m_HttpClient.newRequest(url).method(HttpMethod.GET);
         request.send(responseListener);
@@ -1376,7 +2343,7 @@ public class EngineApiClient implements Closeable
 
         LOGGER.debug("GET download logs " + url);
 
-        m_LastError = null;
+        m_LastError.set(null);
         InputStreamResponseListener responseListener = new InputStreamResponseListener();
         Request request = m_HttpClient.newRequest(url).method(HttpMethod.GET);
         request.send(responseListener);
@@ -1401,7 +2368,7 @@ public class EngineApiClient implements Closeable
 
         LOGGER.debug("GET download logs " + url);
 
-        m_LastError = null;
+        m_LastError.set(null);
         InputStreamResponseListener responseListener = new InputStreamResponseListener();
         Request request = m_HttpClient.newRequest(url).method(HttpMethod.GET);
         request.send(responseListener);
@@ -1426,7 +2393,7 @@ public class EngineApiClient implements Closeable
 
         LOGGER.debug("GET support bundle " + url);
 
-        m_LastError = null;
+        m_LastError.set(null);
         InputStreamResponseListener responseListener = new InputStreamResponseListener();
         Request request = m_HttpClient.newRequest(url).method(HttpMethod.GET);
         request.send(responseListener);
@@ -1488,7 +2455,7 @@ public class EngineApiClient implements Closeable
     public <T> T get(URI uri, TypeReference<T> typeRef)
     throws JsonParseException, JsonMappingException, IOException
     {
-        return executeRequest(m_HttpClient.newRequest(uri).method(HttpMethod.GET), typeRef, false);
+        return executeRequest(newRequest(uri, HttpMethod.GET), typeRef, false);
     }
 
     /**
@@ -1518,31 +2485,144 @@ public class EngineApiClient implements Closeable
     public <T> T get(String url, TypeReference<T> typeRef, boolean errorOn404)
     throws JsonParseException, JsonMappingException, IOException
     {
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.GET), typeRef, errorOn404);
+        return executeRequest(newRequest(url, HttpMethod.GET), typeRef, errorOn404);
+    }
+
+    /**
+     * GET with its own total timeout in place of the client's request
+     * timeout, for long polls that are expected to outlast it.
+     * A 404 status code is treated as an error.
+     *
+     * @param timeoutMs The request timeout or 0 for none
+     */
+    <T> T get(String url, TypeReference<T> typeRef, long timeoutMs)
+    throws IOException
+    {
+        Request request = m_HttpClient.newRequest(url).method(HttpMethod.GET);
+        if (timeoutMs > 0)
+        {
+            request.timeout(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+        return executeRequest(request, typeRef, true);
+    }
+
+    /**
+     * True for GETs of the resources a {@link ConditionalGetStore} is
+     * for. Results are not as they go through the {@link ResultsCache}
+     * and neither are alert long polls, which a stored response would
+     * answer at once.
+     */
+    private boolean isConditionalGet(Request request)
+    {
+        if (!HttpMethod.GET.is(request.getMethod()))
+        {
+            return false;
+        }
+
+        String basePath = Strings.nullToEmpty(URI.create(m_BaseUrl).getRawPath());
+        String path = request.getPath();
+        return path != null && path.startsWith(basePath)
+                && CONDITIONAL_GET_PATH.matcher(path.substring(basePath.length())).matches();
+    }
+
+    /**
+     * The mappers for a response with the given <code>Content-Type</code>
+     */
+    private ObjectMapperFactory mappersFor(String contentType)
+    {
+        return (WireFormat.fromContentType(contentType) == WireFormat.SMILE) ? m_SmileMappers
+                : m_JsonMappers;
     }
 
+    /**
+     * Send the request and parse the response body as it arrives rather
+     * than buffering the whole body first, so a large page of results
+     * is never held in memory as both text and objects.
+     */
     private <T> T executeRequest(Request request, TypeReference<T> typeRef, boolean errorOn404)
     throws JsonParseException, JsonMappingException, IOException
     {
-        ContentResponse response = executeRequest(request);
-        String content = response.getContentAsString();
+        // Make GETs conditional on the version of the last response we have
+        ConditionalGetStore store = isConditionalGet(request) ? m_ConditionalGetStore : null;
+        ConditionalGetStore.Validated stored = null;
+        if (store != null)
+        {
+            stored = store.get(request.getURI().toString(), typeRef.getType());
+            if (stored != null && stored.getETag() != null)
+            {
+                request.header(HttpHeader.IF_NONE_MATCH, stored.getETag());
+            }
+            if (stored != null && stored.getLastModified() != null)
+            {
+                request.header(HttpHeader.IF_MODIFIED_SINCE, stored.getLastModified());
+            }
+        }
+
+        request.header(HttpHeader.ACCEPT, m_WireFormat.acceptHeader());
 
-        // 404 errors return empty paging docs so still read them
-        if (response.getStatus() == HttpStatus.OK_200
-                || (response.getStatus() == HttpStatus.NOT_FOUND_404 && !errorOn404))
+        InputStreamResponseListener responseListener = new InputStreamResponseListener();
+        request.send(responseListener);
+
+        Response response;
+        try
         {
-            T docs = m_JsonMapper.readValue(content, typeRef);
-            m_LastError = null;
-            return docs;
+            response = responseListener.get(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException | TimeoutException | ExecutionException e)
+        {
+            LOGGER.error("An error occurred while executing an HTTP request", e);
+            throw new IOException(e);
         }
 
-        String msg = String.format(request.getMethod() +
-                " returned status code %d for url %s. Returned content = %s",
-                response.getStatus(), request.getURI(), content);
-        LOGGER.error(msg);
-        m_LastError = m_JsonMapper.readValue(content, new TypeReference<ApiError>() {} );
+        try (InputStream content = responseListener.getInputStream())
+        {
+            if (response.getStatus() == HttpStatus.NOT_MODIFIED_304 && stored != null)
+            {
+                ByteStreams.copy(content, ByteStreams.nullOutputStream());
+                store.notModified();
+                m_LastError.set(null);
 
-        return null;
+                @SuppressWarnings("unchecked")
+                T docs = (T) stored.getValue();
+                return docs;
+            }
+
+            // 404 errors return empty paging docs so still read them
+            if (response.getStatus() == HttpStatus.OK_200
+                    || (response.getStatus() == HttpStatus.NOT_FOUND_404 && !errorOn404))
+            {
+                T docs;
+                ObjectMapperFactory mappers = mappersFor(response.getHeaders().get(HttpHeader.CONTENT_TYPE));
+                try (JsonParser parser = mappers.getMapper().getFactory().createParser(content))
+                {
+                    docs = mappers.reader(typeRef).readValue(parser);
+
+                    // Consume anything after the document so the
+                    // connection can be reused
+                    ByteStreams.copy(content, ByteStreams.nullOutputStream());
+                }
+                if (store != null && response.getStatus() == HttpStatus.OK_200)
+                {
+                    store.put(request.getURI().toString(), typeRef.getType(),
+                            response.getHeaders().get(HttpHeader.ETAG),
+                            response.getHeaders().get(HttpHeader.LAST_MODIFIED), docs);
+                }
+                m_LastError.set(null);
+                return docs;
+            }
+
+            byte [] errorContent = ByteStreams.toByteArray(content);
+            ObjectMapperFactory mappers = mappersFor(response.getHeaders().get(HttpHeader.CONTENT_TYPE));
+            String msg = String.format(request.getMethod() +
+                    " returned status code %d for url %s. Returned content = %s",
+                    response.getStatus(), request.getURI(), (mappers == m_JsonMappers)
+                            ? new String(errorContent, StandardCharsets.UTF_8)
+                            : "<" + errorContent.length + " bytes of Smile>");
+            LOGGER.error(msg);
+            m_LastError.set(mappers.reader(ApiError.class).readValue(errorContent));
+
+            return null;
+        }
     }
 
     /**
@@ -1600,7 +2680,7 @@ public class EngineApiClient implements Closeable
     public <T> T post(URI uri, TypeReference<T> typeRef)
     throws JsonParseException, JsonMappingException, IOException
     {
-        return executeRequest(m_HttpClient.newRequest(uri).method(HttpMethod.POST), typeRef, false);
+        return executeRequest(newRequest(uri, HttpMethod.POST), typeRef, false);
     }
 
     /**
@@ -1630,17 +2710,29 @@ public class EngineApiClient implements Closeable
     public <T> T post(String url, TypeReference<T> typeRef, boolean errorOn404)
     throws JsonParseException, JsonMappingException, IOException
     {
-        return executeRequest(m_HttpClient.newRequest(url).method(HttpMethod.POST), typeRef,
+        return executeRequest(newRequest(url, HttpMethod.POST), typeRef,
                 errorOn404);
     }
 
     /**
-     * Get the last error message
-     * @return The error or null if no errors have occurred
+     * Get the error from the last call made by the current thread.
+     * Calls made by other threads sharing this client do not affect
+     * the value returned.
+     *
+     * @return The error or null if the current thread's last call succeeded
      */
     public ApiError getLastError()
     {
-        return m_LastError;
+        return m_LastError.get();
+    }
+
+    /**
+     * Clear the current thread's last error, for calls answered
+     * without a request such as those served from the results cache
+     */
+    void clearLastError()
+    {
+        m_LastError.set(null);
     }
 
     public String getBaseUrl()
@@ -1648,6 +2740,167 @@ public class EngineApiClient implements Closeable
         return m_BaseUrl;
     }
 
+    /**
+     * The pool of buffers used to read data from the input streams
+     * passed to the streaming upload methods. The pool's hit and miss
+     * counts show whether it is large enough for the upload load.
+     *
+     * @return The upload buffer pool
+     */
+    public BufferPool getBufferPool()
+    {
+        return m_BufferPool;
+    }
+
+    /**
+     * Replace the pool of upload buffers, for example with one that
+     * has more or larger buffers. Uploads already in progress continue
+     * to use the old pool.
+     *
+     * @param bufferPool The new buffer pool
+     */
+    public void setBufferPool(BufferPool bufferPool)
+    {
+        m_BufferPool = bufferPool;
+    }
+
+    /**
+     * @return The format requested for the documents returned by the API
+     */
+    public WireFormat getWireFormat()
+    {
+        return m_WireFormat;
+    }
+
+    /**
+     * Ask the API to return documents such as results pages in
+     * <code>wireFormat</code>. Responses are decoded according to their
+     * content type so if the API does not support the format the
+     * documents are read as JSON. Default is {@link WireFormat#JSON}.
+     *
+     * @param wireFormat The requested format
+     */
+    public void setWireFormat(WireFormat wireFormat)
+    {
+        m_WireFormat = Objects.requireNonNull(wireFormat);
+        m_AsyncClient.setWireFormat(wireFormat);
+    }
+
+    /**
+     * The controller limiting how much data streaming uploads read ahead
+     * of what has been sent. Its metrics show the upload throughput and
+     * how often uploads waited for the engine.
+     *
+     * @return The upload flow controller
+     */
+    public UploadFlowController getUploadFlowController()
+    {
+        return m_UploadFlowController;
+    }
+
+    /**
+     * Replace the upload flow controller, for example with one that
+     * allows more bytes in flight. Uploads already in progress continue
+     * to use the old controller.
+     *
+     * @param flowController The new flow controller
+     */
+    public void setUploadFlowController(UploadFlowController flowController)
+    {
+        m_UploadFlowController = Objects.requireNonNull(flowController);
+    }
+
+    /**
+     * @return The cache of bucket, record and influencer queries
+     * or null if results are not cached
+     */
+    public ResultsCache getResultsCache()
+    {
+        return m_ResultsCache;
+    }
+
+    /**
+     * Cache the results of the bucket, record and influencer request
+     * builders' <code>get()</code> methods. Caching is off by default.
+     *
+     * @param resultsCache The cache or null to stop caching
+     */
+    public void setResultsCache(ResultsCache resultsCache)
+    {
+        m_ResultsCache = resultsCache;
+    }
+
+    /**
+     * @return The store of responses used to make GET requests
+     * conditional or null if they are not
+     */
+    public ConditionalGetStore getConditionalGetStore()
+    {
+        return m_ConditionalGetStore;
+    }
+
+    /**
+     * Make GET requests for the job list, job documents and category
+     * definitions conditional on the last response for the same URL so
+     * an unchanged resource is answered by a 304 Not Modified and the
+     * stored object is reused. Off by default.
+     * <br>
+     * The objects these requests return are shared with later callers
+     * and must be treated as read only.
+     *
+     * @param store The store or null to stop making conditional requests
+     */
+    public void setConditionalGetStore(ConditionalGetStore store)
+    {
+        m_ConditionalGetStore = store;
+    }
+
+    /**
+     * The time before which the job's results are final. That is a
+     * bucket span plus the job's result finalization window, measured
+     * in buckets, before the latest record the job has processed. The
+     * horizon follows the data rather than the wall clock so it is
+     * right for jobs analysing historical data or running behind.
+     * <br>
+     * The job is read with the asynchronous client so the calling
+     * thread's {@linkplain #getLastError() last error} is unchanged.
+     *
+     * @return The epoch time in milliseconds or <code>Long.MIN_VALUE</code>
+     * if the job cannot be read or has not processed any records
+     */
+    long lookupFinalBeforeMs(String jobId)
+    {
+        JobDetails job;
+        try
+        {
+            job = m_AsyncClient.getJob(jobId).get().getDocument();
+        }
+        catch (ExecutionException e)
+        {
+            LOGGER.warn("Could not read the finalization window of job " + jobId, e.getCause());
+            return Long.MIN_VALUE;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return Long.MIN_VALUE;
+        }
+
+        if (job == null || job.getAnalysisConfig() == null
+                || job.getAnalysisConfig().getBucketSpan() == null
+                || job.getCounts() == null
+                || job.getCounts().getLatestRecordTimeStamp() == null)
+        {
+            return Long.MIN_VALUE;
+        }
+
+        AnalysisConfig config = job.getAnalysisConfig();
+        long window = (config.getResultFinalizationWindow() == null) ? 0
+                : config.getResultFinalizationWindow();
+        return job.getCounts().getLatestRecordTimeStamp().getTime()
+                - TimeUnit.SECONDS.toMillis(config.getBucketSpan() * (window + 1));
+    }
+
     private static ApiError newUnknownError(String msg)
     {
         ApiError error = new ApiError(ErrorCodes.UNKNOWN_ERROR);
@@ -1655,7 +2908,7 @@ public class EngineApiClient implements Closeable
         return error;
     }
 
-    private String encode(String s)
+    static String encode(String s)
     {
         try
         {
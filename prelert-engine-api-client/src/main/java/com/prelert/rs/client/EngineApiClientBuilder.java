@@ -0,0 +1,305 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+/**
+ * Builds an {@link EngineApiClient} with a tuned HTTP connection pool.
+ * Settings that are not given keep the Jetty <code>HttpClient</code>
+ * defaults.
+ * <br>
+ * Connections are persistent (HTTP/1.1 keep-alive) and are reused until
+ * they have been idle for longer than the idle timeout. Many small
+ * concurrent requests, such as polling results for lots of jobs, benefit
+ * from more connections per destination and a larger executor whereas a
+ * few large uploads need only a handful of connections.
+ * <br>
+ * The Jetty client does not support HTTP/1.1 pipelining; concurrent
+ * requests to the same server are spread over the connection pool.
+ *
+ * <pre>
+ * try (EngineApiClient client = EngineApiClient.builder(baseUrl)
+ *         .maxConnectionsPerDestination(64)
+ *         .requestTimeout(30, TimeUnit.SECONDS)
+ *         .build())
+ * {
+ *     ...
+ * }
+ * </pre>
+ */
+public class EngineApiClientBuilder
+{
+    private static final String THREAD_POOL_NAME = "EngineApiClient";
+
+    private final String m_BaseUrl;
+    private Integer m_MaxConnectionsPerDestination;
+    private Integer m_MaxRequestsQueuedPerDestination;
+    private Long m_IdleTimeoutMs;
+    private Long m_ConnectTimeoutMs;
+    private long m_RequestTimeoutMs;
+    private int m_MinThreads;
+    private int m_MaxThreads;
+    private BufferPool m_BufferPool;
+    private UploadFlowController m_UploadFlowController;
+    private WireFormat m_WireFormat;
+    private ResultsCache m_ResultsCache;
+    private ConditionalGetStore m_ConditionalGetStore;
+
+    /**
+     * @param baseUrl The base URL for the REST API including version number
+     * e.g <code>http://localhost:8080/engine/v2/</code>
+     */
+    public EngineApiClientBuilder(String baseUrl)
+    {
+        m_BaseUrl = Objects.requireNonNull(baseUrl);
+    }
+
+    /**
+     * The maximum number of connections opened to the server.
+     * Requests beyond this wait in the destination's queue.
+     *
+     * @param maxConnections The connection limit
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder maxConnectionsPerDestination(int maxConnections)
+    {
+        checkPositive(maxConnections, "Max connections per destination");
+        m_MaxConnectionsPerDestination = maxConnections;
+        return this;
+    }
+
+    /**
+     * The maximum number of requests waiting for a free connection.
+     * Further requests fail immediately rather than queueing.
+     *
+     * @param maxQueued The queue limit
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder maxRequestsQueuedPerDestination(int maxQueued)
+    {
+        checkPositive(maxQueued, "Max requests queued per destination");
+        m_MaxRequestsQueuedPerDestination = maxQueued;
+        return this;
+    }
+
+    /**
+     * How long a kept-alive connection may be idle before it is closed.
+     * This also bounds how long a request may wait for the next byte
+     * of the response.
+     *
+     * @param timeout The timeout, 0 means connections are never closed
+     * @param unit The unit of <code>timeout</code>
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder idleTimeout(long timeout, TimeUnit unit)
+    {
+        m_IdleTimeoutMs = toMillis(timeout, unit, "Idle timeout");
+        return this;
+    }
+
+    /**
+     * How long to wait for a new connection to be established
+     *
+     * @param timeout The timeout
+     * @param unit The unit of <code>timeout</code>
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder connectTimeout(long timeout, TimeUnit unit)
+    {
+        m_ConnectTimeoutMs = toMillis(timeout, unit, "Connect timeout");
+        return this;
+    }
+
+    /**
+     * The total time allowed for each API request, including waiting
+     * for a connection. Data uploads, log downloads and alert long polls
+     * are not limited by this timeout as they can take far longer than
+     * any other request. The default is no limit.
+     *
+     * @param timeout The timeout, 0 for no limit
+     * @param unit The unit of <code>timeout</code>
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder requestTimeout(long timeout, TimeUnit unit)
+    {
+        m_RequestTimeoutMs = toMillis(timeout, unit, "Request timeout");
+        return this;
+    }
+
+    /**
+     * Size the pool of threads the HTTP client uses for network I/O
+     * and for running response callbacks
+     *
+     * @param minThreads The number of threads kept when idle
+     * @param maxThreads The maximum number of threads
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder executorThreads(int minThreads, int maxThreads)
+    {
+        checkPositive(minThreads, "Min threads");
+        if (maxThreads < minThreads)
+        {
+            throw new IllegalArgumentException("Max threads (" + maxThreads
+                    + ") must not be less than min threads (" + minThreads + ")");
+        }
+        m_MinThreads = minThreads;
+        m_MaxThreads = maxThreads;
+        return this;
+    }
+
+    /**
+     * The pool of buffers used by streaming uploads
+     *
+     * @param bufferPool The buffer pool
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder bufferPool(BufferPool bufferPool)
+    {
+        m_BufferPool = Objects.requireNonNull(bufferPool);
+        return this;
+    }
+
+    /**
+     * Limit the bytes streaming uploads read ahead of what has been sent.
+     * Default is {@value UploadFlowController#DEFAULT_MAX_IN_FLIGHT_BYTES} bytes.
+     *
+     * @param flowController The upload flow controller
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder uploadFlowController(UploadFlowController flowController)
+    {
+        m_UploadFlowController = Objects.requireNonNull(flowController);
+        return this;
+    }
+
+    /**
+     * Cache the results of bucket, record and influencer queries.
+     * Default is no caching.
+     *
+     * @param resultsCache The results cache
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder resultsCache(ResultsCache resultsCache)
+    {
+        m_ResultsCache = resultsCache;
+        return this;
+    }
+
+    /**
+     * Make GET requests for the job list, job documents and category
+     * definitions conditional on the last response for the same URL.
+     * Default is unconditional requests.
+     * <br>
+     * The objects these requests return are shared with later callers
+     * and must be treated as read only.
+     *
+     * @param store The store of validated responses
+     * @return this {@code Builder} object
+     */
+    public EngineApiClientBuilder conditionalGetStore(ConditionalGetStore store)
+    {
+        m_ConditionalGetStore = store;
+        return this;
+    }
+
+    /**
+     * The format to ask the API to return documents in.
+     * Default is {@link WireFormat#JSON}.
+     *
+     * @param wireFormat The requested format
+     * @return this {@code Builder} object
+     * @see EngineApiClient#setWireFormat(WireFormat)
+     */
+    public EngineApiClientBuilder wireFormat(WireFormat wireFormat)
+    {
+        m_WireFormat = Objects.requireNonNull(wireFormat);
+        return this;
+    }
+
+    /**
+     * Create and start the client. Call {@linkplain EngineApiClient#close()}
+     * once finished.
+     *
+     * @return A new client
+     */
+    public EngineApiClient build()
+    {
+        HttpClient httpClient = new HttpClient();
+        if (m_MaxConnectionsPerDestination != null)
+        {
+            httpClient.setMaxConnectionsPerDestination(m_MaxConnectionsPerDestination);
+        }
+        if (m_MaxRequestsQueuedPerDestination != null)
+        {
+            httpClient.setMaxRequestsQueuedPerDestination(m_MaxRequestsQueuedPerDestination);
+        }
+        if (m_IdleTimeoutMs != null)
+        {
+            httpClient.setIdleTimeout(m_IdleTimeoutMs);
+        }
+        if (m_ConnectTimeoutMs != null)
+        {
+            httpClient.setConnectTimeout(m_ConnectTimeoutMs);
+        }
+        if (m_MaxThreads > 0)
+        {
+            QueuedThreadPool threadPool = new QueuedThreadPool(m_MaxThreads, m_MinThreads);
+            threadPool.setName(THREAD_POOL_NAME);
+            threadPool.setDaemon(true);
+            httpClient.setExecutor(threadPool);
+        }
+
+        BufferPool bufferPool = (m_BufferPool == null) ? new BufferPool() : m_BufferPool;
+        EngineApiClient client = new EngineApiClient(m_BaseUrl, httpClient, m_RequestTimeoutMs,
+                bufferPool);
+        if (m_UploadFlowController != null)
+        {
+            client.setUploadFlowController(m_UploadFlowController);
+        }
+        if (m_WireFormat != null)
+        {
+            client.setWireFormat(m_WireFormat);
+        }
+        client.setResultsCache(m_ResultsCache);
+        client.setConditionalGetStore(m_ConditionalGetStore);
+        return client;
+    }
+
+    private static void checkPositive(int value, String name)
+    {
+        if (value < 1)
+        {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+    }
+
+    private static long toMillis(long timeout, TimeUnit unit, String name)
+    {
+        if (timeout < 0)
+        {
+            throw new IllegalArgumentException(name + " must not be negative: " + timeout);
+        }
+        return unit.toMillis(timeout);
+    }
+}
@@ -0,0 +1,67 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+
+import com.prelert.job.errorcodes.ErrorCodes;
+import com.prelert.job.errorcodes.HasErrorCode;
+import com.prelert.rs.data.ApiError;
+
+/**
+ * An error returned by the Engine API in reply to a request.
+ * Wraps the {@link ApiError} the server sent together with the
+ * HTTP status code of the response.
+ */
+public class EngineApiException extends IOException implements HasErrorCode
+{
+    private static final long serialVersionUID = 3270946307916433541L;
+
+    private final int m_Status;
+    private final ApiError m_ApiError;
+
+    public EngineApiException(int status, ApiError apiError)
+    {
+        super(apiError.getMessage());
+        m_Status = status;
+        m_ApiError = apiError;
+    }
+
+    /**
+     * @return The HTTP status code of the response
+     */
+    public int getStatus()
+    {
+        return m_Status;
+    }
+
+    /**
+     * @return The error sent by the server
+     */
+    public ApiError getApiError()
+    {
+        return m_ApiError;
+    }
+
+    @Override
+    public ErrorCodes getErrorCode()
+    {
+        return m_ApiError.getErrorCode();
+    }
+}
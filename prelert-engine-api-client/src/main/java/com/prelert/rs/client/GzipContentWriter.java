@@ -0,0 +1,241 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+
+/**
+ * Gzip compresses raw data as it is uploaded. The calling thread reads
+ * the input stream into pooled buffers and hands them over a small
+ * bounded queue to a compressor thread, which deflates the data and
+ * offers the compressed output to the request. Reading and compressing
+ * therefore overlap and neither the raw nor the compressed data is
+ * ever held in full: the compressed bytes waiting to be sent are
+ * limited by the client's {@link UploadFlowController}.
+ */
+class GzipContentWriter implements ContentWriter
+{
+    private static final Logger LOGGER = Logger.getLogger(GzipContentWriter.class);
+
+    /**
+     * The number of raw buffers that may wait for the compressor
+     */
+    private static final int QUEUE_CAPACITY = 4;
+    private static final long QUEUE_POLL_MS = 100;
+
+    /**
+     * Marks the end of the raw data in the queue
+     */
+    private static final ByteBuffer END_OF_DATA = ByteBuffer.allocate(0);
+
+    private final InputStream m_InputStream;
+    private final BufferPool m_BufferPool;
+    private final UploadFlowController m_FlowController;
+    private final int m_CompressionLevel;
+
+    /**
+     * @param inputStream The raw data
+     * @param bufferPool The pool that read and compressed buffers are taken from
+     * @param flowController Limits the compressed bytes waiting to be sent
+     * @param compressionLevel The deflate level from 0 (no compression)
+     * to 9 (best compression) or {@link Deflater#DEFAULT_COMPRESSION}
+     */
+    GzipContentWriter(InputStream inputStream, BufferPool bufferPool,
+            UploadFlowController flowController, int compressionLevel)
+    {
+        if ((compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)
+                && compressionLevel != Deflater.DEFAULT_COMPRESSION)
+        {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+
+        m_InputStream = inputStream;
+        m_BufferPool = bufferPool;
+        m_FlowController = flowController;
+        m_CompressionLevel = compressionLevel;
+    }
+
+    @Override
+    public void write(DeferredContentProvider contentProvider, BooleanSupplier requestActive)
+    throws IOException
+    {
+        BlockingQueue<ByteBuffer> rawQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        AtomicReference<IOException> compressorFailure = new AtomicReference<>();
+
+        Thread compressor = new Thread(() ->
+        {
+            try
+            {
+                compress(rawQueue, contentProvider, requestActive);
+            }
+            catch (InterruptedIOException e)
+            {
+                compressorFailure.set(e);
+            }
+            catch (IOException e)
+            {
+                LOGGER.error("Error compressing upload data", e);
+                compressorFailure.set(e);
+            }
+            catch (InterruptedException e)
+            {
+                compressorFailure.set(new InterruptedIOException("Compression interrupted"));
+            }
+        }, "gzip-upload-compressor");
+        compressor.setDaemon(true);
+        compressor.start();
+
+        boolean finished = false;
+        ByteBuffer buffer = null;
+        try
+        {
+            buffer = m_BufferPool.acquire();
+            int bytesRead = 0;
+            while ((bytesRead = m_InputStream.read(buffer.array(), buffer.arrayOffset(),
+                                                   buffer.capacity())) > -1
+                    && requestActive.getAsBoolean())
+            {
+                buffer.limit(bytesRead);
+                if (!handOver(rawQueue, buffer, compressor))
+                {
+                    break;
+                }
+                buffer = m_BufferPool.acquire();
+            }
+
+            handOver(rawQueue, END_OF_DATA, compressor);
+            compressor.join();
+            finished = true;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading compressed data");
+        }
+        finally
+        {
+            if (!finished)
+            {
+                // Reading failed or was interrupted: stop the compressor
+                // rather than leave it waiting for data that never comes
+                compressor.interrupt();
+            }
+            if (buffer != null)
+            {
+                m_BufferPool.release(buffer);
+            }
+            m_InputStream.close();
+        }
+
+        if (compressorFailure.get() != null)
+        {
+            throw compressorFailure.get();
+        }
+    }
+
+    /**
+     * Put the buffer on the queue, giving up if the compressor has stopped.
+     *
+     * @return False if the compressor is no longer running
+     */
+    private static boolean handOver(BlockingQueue<ByteBuffer> queue, ByteBuffer buffer,
+            Thread compressor) throws InterruptedException
+    {
+        while (!queue.offer(buffer, QUEUE_POLL_MS, TimeUnit.MILLISECONDS))
+        {
+            if (!compressor.isAlive())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void compress(BlockingQueue<ByteBuffer> rawQueue,
+            DeferredContentProvider contentProvider, BooleanSupplier requestActive)
+    throws IOException, InterruptedException
+    {
+        ContentProviderOutputStream compressed =
+                new ContentProviderOutputStream(contentProvider, m_BufferPool, m_FlowController,
+                        requestActive);
+        LevelGzipOutputStream gzip = new LevelGzipOutputStream(compressed,
+                m_BufferPool.getBufferSize(), m_CompressionLevel);
+        boolean complete = false;
+        try
+        {
+            ByteBuffer raw;
+            while ((raw = rawQueue.take()) != END_OF_DATA)
+            {
+                if (requestActive.getAsBoolean())
+                {
+                    gzip.write(raw.array(), raw.arrayOffset() + raw.position(), raw.remaining());
+                }
+                m_BufferPool.release(raw);
+            }
+            complete = true;
+        }
+        finally
+        {
+            if (complete)
+            {
+                gzip.close();
+            }
+            else
+            {
+                // Do not write the gzip trailer after a failure, so the
+                // truncated upload cannot be taken as complete
+                gzip.abort();
+            }
+        }
+    }
+
+    /**
+     * GZIPOutputStream with a configurable deflate level
+     */
+    private static class LevelGzipOutputStream extends GZIPOutputStream
+    {
+        LevelGzipOutputStream(OutputStream out, int size, int level) throws IOException
+        {
+            super(out, size);
+            def.setLevel(level);
+        }
+
+        /**
+         * Free the deflater without finishing the stream
+         */
+        void abort()
+        {
+            def.end();
+        }
+    }
+}
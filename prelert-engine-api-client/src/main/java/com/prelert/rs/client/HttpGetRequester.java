@@ -20,6 +20,11 @@ package com.prelert.rs.client;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import org.apache.log4j.Logger;
 
@@ -55,6 +60,108 @@ class HttpGetRequester<T>
         return page;
     }
 
+    protected CompletableFuture<Pagination<T>> getPageAsync(String fullUrl,
+            TypeReference<Pagination<T>> typeRef)
+    {
+        LOGGER.debug("GET async " + fullUrl);
+
+        return m_Client.async().get(fullUrl, typeRef).thenApply(page ->
+        {
+            if (page == null)
+            {
+                page = new Pagination<>();
+                page.setDocuments(Collections.emptyList());
+            }
+            return page;
+        });
+    }
+
+    /**
+     * As {@link #getPage(String, TypeReference)} but answered from the
+     * client's {@link ResultsCache} when possible. Successful responses
+     * are cached, as finalized results if every document is final.
+     */
+    protected Pagination<T> getCachedPage(String jobId, String fullUrl,
+            TypeReference<Pagination<T>> typeRef, Function<T, Date> timestamp,
+            Predicate<T> interim)
+    throws IOException
+    {
+        ResultsCache cache = m_Client.getResultsCache();
+        if (cache == null)
+        {
+            return getPage(fullUrl, typeRef);
+        }
+
+        Pagination<T> page = cache.get(fullUrl);
+        if (page != null)
+        {
+            LOGGER.debug("GET from cache " + fullUrl);
+            m_Client.clearLastError();
+            return page;
+        }
+
+        page = getPage(fullUrl, typeRef);
+        if (m_Client.getLastError() == null)
+        {
+            cache.put(jobId, fullUrl, page,
+                    areFinal(cache, jobId, page.getDocuments(), timestamp, interim));
+        }
+        return page;
+    }
+
+    protected SingleDocument<T> getCachedSingleDocument(String jobId, String fullUrl,
+            TypeReference<SingleDocument<T>> typeRef, Function<T, Date> timestamp,
+            Predicate<T> interim)
+    throws IOException
+    {
+        ResultsCache cache = m_Client.getResultsCache();
+        if (cache == null)
+        {
+            return getSingleDocument(fullUrl, typeRef);
+        }
+
+        SingleDocument<T> doc = cache.get(fullUrl);
+        if (doc != null)
+        {
+            LOGGER.debug("GET from cache " + fullUrl);
+            m_Client.clearLastError();
+            return doc;
+        }
+
+        doc = getSingleDocument(fullUrl, typeRef);
+        if (m_Client.getLastError() == null)
+        {
+            List<T> docs = (doc.getDocument() == null) ? Collections.emptyList()
+                    : Collections.singletonList(doc.getDocument());
+            cache.put(jobId, fullUrl, doc, areFinal(cache, jobId, docs, timestamp, interim));
+        }
+        return doc;
+    }
+
+    /**
+     * True if there are documents and none are interim or
+     * within the job's finalization horizon of its latest record
+     */
+    private boolean areFinal(ResultsCache cache, String jobId, List<T> docs,
+            Function<T, Date> timestamp, Predicate<T> interim)
+    {
+        if (docs == null || docs.isEmpty())
+        {
+            return false;
+        }
+
+        long finalBefore = cache.finalBeforeMs(jobId, m_Client::lookupFinalBeforeMs);
+        for (T doc : docs)
+        {
+            Date time = timestamp.apply(doc);
+            if (interim.test(doc) || time == null || time.getTime() >= finalBefore)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
     protected SingleDocument<T> getSingleDocument(String fullUrl,
             TypeReference<SingleDocument<T>> typeRef) throws IOException
     {
@@ -66,6 +173,15 @@ class HttpGetRequester<T>
         return doc == null ? new SingleDocument<>() : doc;
     }
 
+    protected CompletableFuture<SingleDocument<T>> getSingleDocumentAsync(String fullUrl,
+            TypeReference<SingleDocument<T>> typeRef)
+    {
+        LOGGER.debug("GET async " + fullUrl);
+
+        return m_Client.async().get(fullUrl, typeRef)
+                .thenApply(doc -> doc == null ? new SingleDocument<>() : doc);
+    }
+
     protected T get(String fullUrl, TypeReference<T> typeRef)
     throws IOException
     {
@@ -75,4 +191,31 @@ class HttpGetRequester<T>
 
         return doc;
     }
+
+    protected CompletableFuture<T> getAsync(String fullUrl, TypeReference<T> typeRef)
+    {
+        LOGGER.debug("GET async " + fullUrl);
+
+        return m_Client.async().get(fullUrl, typeRef, true);
+    }
+
+    /**
+     * As {@link #get(String, TypeReference)} with a request timeout
+     * that replaces the client's, for long polls
+     */
+    protected T get(String fullUrl, TypeReference<T> typeRef, long timeoutMs)
+    throws IOException
+    {
+        LOGGER.debug("GET " + fullUrl);
+
+        return m_Client.get(fullUrl, typeRef, timeoutMs);
+    }
+
+    protected CompletableFuture<T> getAsync(String fullUrl, TypeReference<T> typeRef,
+            long timeoutMs)
+    {
+        LOGGER.debug("GET async " + fullUrl);
+
+        return m_Client.async().get(fullUrl, typeRef, timeoutMs);
+    }
 }
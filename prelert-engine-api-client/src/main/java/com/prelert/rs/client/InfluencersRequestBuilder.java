@@ -21,8 +21,11 @@ package com.prelert.rs.client;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.results.Influencer;
@@ -169,18 +172,78 @@ public class InfluencersRequestBuilder extends BaseJobRequestBuilder<Influencer>
     }
 
     /**
-     * Returns the page with the influencers that were requested
+     * Returns the page with the influencers that were requested.
+     * Served from the client's {@link ResultsCache} if it has one.
      *
      * @return A {@link Pagination} object containing the resulted {@link Influencer}
      * objects
      * @throws IOException If HTTP GET fails
      */
     public Pagination<Influencer> get() throws IOException
+    {
+        return createHttpGetRequester().getCachedPage(jobId(), buildUrl(),
+                new TypeReference<Pagination<Influencer>>() {}, Influencer::getTimestamp,
+                Influencer::isInterim);
+    }
+
+    /**
+     * Returns the page with the influencers that were requested without blocking
+     *
+     * @return A future of the {@link Pagination} object containing the resulted {@link Influencer}
+     * objects
+     */
+    public CompletableFuture<Pagination<Influencer>> getAsync()
+    {
+        return createHttpGetRequester().getPageAsync(buildUrl(),
+                new TypeReference<Pagination<Influencer>>() {});
+    }
+
+    /**
+     * Sets how many pages {@link #iterator()} and {@link #stream()} fetch
+     * in the background ahead of the page being read. Default is
+     * {@value #DEFAULT_PREFETCH_PAGES}.
+     *
+     * @param pages The number of pages to prefetch, 0 fetches each page
+     * only when it is needed
+     * @return this {@code Builder} object
+     */
+    public InfluencersRequestBuilder prefetch(int pages)
+    {
+        setPrefetchPages(pages);
+        return this;
+    }
+
+    /**
+     * Returns an iterator over all the influencers that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. A failed request is thrown as an
+     * {@link java.io.UncheckedIOException}.
+     *
+     * @return An iterator of {@link Influencer} objects
+     */
+    public Iterator<Influencer> iterator()
+    {
+        return pageIterator(buildUrl(), new TypeReference<Pagination<Influencer>>() {});
+    }
+
+    /**
+     * Returns a lazy stream of all the influencers that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. Close the stream if it is not read to the end
+     * so no further pages are fetched.
+     *
+     * @return A stream of {@link Influencer} objects
+     */
+    public Stream<Influencer> stream()
+    {
+        return pageStream(buildUrl(), new TypeReference<Pagination<Influencer>>() {});
+    }
+
+    private String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append("/results/").append(jobId()).append("/influencers");
         appendParams(m_Params, url);
-        return createHttpGetRequester().getPage(url.toString(),
-                new TypeReference<Pagination<Influencer>>() {});
+        return url.toString();
     }
 }
@@ -22,8 +22,11 @@ package com.prelert.rs.client;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.ModelSnapshot;
@@ -164,12 +167,70 @@ public class ModelSnapshotsRequestBuilder extends BaseJobRequestBuilder<ModelSna
      */
     public Pagination<ModelSnapshot> get()
     throws IOException
+    {
+        return createHttpGetRequester().getPage(buildUrl(),
+                new TypeReference<Pagination<ModelSnapshot>>() {});
+    }
+
+    /**
+     * Returns the page with the snapshot that was requested without blocking
+     *
+     * @return A future of the {@link Pagination} object containing the requested
+     * {@link ModelSnapshot} objects
+     */
+    public CompletableFuture<Pagination<ModelSnapshot>> getAsync()
+    {
+        return createHttpGetRequester().getPageAsync(buildUrl(),
+                new TypeReference<Pagination<ModelSnapshot>>() {});
+    }
+
+    /**
+     * Sets how many pages {@link #iterator()} and {@link #stream()} fetch
+     * in the background ahead of the page being read. Default is
+     * {@value #DEFAULT_PREFETCH_PAGES}.
+     *
+     * @param pages The number of pages to prefetch, 0 fetches each page
+     * only when it is needed
+     * @return this {@code Builder} object
+     */
+    public ModelSnapshotsRequestBuilder prefetch(int pages)
+    {
+        setPrefetchPages(pages);
+        return this;
+    }
+
+    /**
+     * Returns an iterator over all the model snapshots that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. A failed request is thrown as an
+     * {@link java.io.UncheckedIOException}.
+     *
+     * @return An iterator of {@link ModelSnapshot} objects
+     */
+    public Iterator<ModelSnapshot> iterator()
+    {
+        return pageIterator(buildUrl(), new TypeReference<Pagination<ModelSnapshot>>() {});
+    }
+
+    /**
+     * Returns a lazy stream of all the model snapshots that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. Close the stream if it is not read to the end
+     * so no further pages are fetched.
+     *
+     * @return A stream of {@link ModelSnapshot} objects
+     */
+    public Stream<ModelSnapshot> stream()
+    {
+        return pageStream(buildUrl(), new TypeReference<Pagination<ModelSnapshot>>() {});
+    }
+
+    private String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append(ENDPOINT).append(jobId());
         appendParams(m_Params, url);
-        return createHttpGetRequester().getPage(url.toString(),
-                new TypeReference<Pagination<ModelSnapshot>>() {});
+        return url.toString();
     }
 
 }
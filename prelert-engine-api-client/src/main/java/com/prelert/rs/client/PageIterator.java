@@ -0,0 +1,168 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.prelert.rs.data.Pagination;
+
+/**
+ * Iterates over every document of a paged query by following the
+ * next page links.
+ * <br>
+ * Requests for the following pages are chained onto the page before
+ * so while the caller works through the current page up to
+ * <code>prefetchPages</code> further pages are being fetched in the
+ * background. A page's request is only sent once the previous page has
+ * arrived as its next page link is not known until then.
+ * <br>
+ * Failed requests are thrown from {@link #hasNext()} and {@link #next()}
+ * as an {@link UncheckedIOException}. Not thread safe.
+ */
+final class PageIterator<T> implements Iterator<T>
+{
+    private final AsyncEngineApiClient m_Client;
+    private final TypeReference<Pagination<T>> m_TypeRef;
+    private final int m_PrefetchPages;
+
+    /** Pending pages in order, a page completing with null marks the end */
+    private final Deque<CompletableFuture<Pagination<T>>> m_Pages;
+    private Pagination<T> m_LastPage;
+    private Iterator<T> m_Current;
+    private boolean m_Finished;
+
+    /**
+     * @param client The client used to fetch pages
+     * @param firstPageUrl The URL of the first page
+     * @param typeRef The type of the pages
+     * @param prefetchPages The number of pages to fetch ahead of the
+     * page being consumed
+     */
+    PageIterator(AsyncEngineApiClient client, String firstPageUrl,
+            TypeReference<Pagination<T>> typeRef, int prefetchPages)
+    {
+        m_Client = client;
+        m_TypeRef = typeRef;
+        m_PrefetchPages = prefetchPages;
+        m_Pages = new ArrayDeque<>();
+        m_Current = Collections.emptyIterator();
+
+        m_Pages.add(m_Client.get(firstPageUrl, typeRef));
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        while (!m_Current.hasNext())
+        {
+            if (m_Finished)
+            {
+                return false;
+            }
+
+            CompletableFuture<Pagination<T>> pending = m_Pages.poll();
+            Pagination<T> page = await(pending == null ? nextPage(m_LastPage) : pending);
+            if (page == null)
+            {
+                m_Finished = true;
+                return false;
+            }
+
+            m_LastPage = page;
+            fillPrefetch();
+            m_Current = page.getDocuments() == null ? Collections.emptyIterator()
+                    : page.getDocuments().iterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        return m_Current.next();
+    }
+
+    /**
+     * Stop fetching further pages. Requests already sent still complete
+     * but their results are discarded.
+     */
+    void cancel()
+    {
+        m_Finished = true;
+        m_Current = Collections.emptyIterator();
+        m_Pages.forEach(page -> page.cancel(false));
+        m_Pages.clear();
+    }
+
+    /**
+     * Chain page requests until <code>m_PrefetchPages</code> pages
+     * are pending after the page being consumed
+     */
+    private void fillPrefetch()
+    {
+        while (m_Pages.size() < m_PrefetchPages)
+        {
+            m_Pages.add(m_Pages.isEmpty() ? nextPage(m_LastPage)
+                    : m_Pages.peekLast().thenCompose(this::nextPage));
+        }
+    }
+
+    private CompletableFuture<Pagination<T>> nextPage(Pagination<T> page)
+    {
+        if (page == null || page.getNextPage() == null)
+        {
+            return CompletableFuture.completedFuture(null);
+        }
+        return m_Client.get(page.getNextPage(), m_TypeRef);
+    }
+
+    private Pagination<T> await(CompletableFuture<Pagination<T>> page)
+    {
+        try
+        {
+            return page.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new UncheckedIOException(new IOException("Interrupted while paging", e));
+        }
+        catch (ExecutionException e)
+        {
+            cancel();
+            Throwable cause = e.getCause();
+            throw new UncheckedIOException(cause instanceof IOException ? (IOException) cause
+                    : new IOException(cause));
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.prelert.job.DataDescription;
+import com.prelert.job.DataDescription.DataFormat;
+
+/**
+ * Reads an input stream in chunks that end on record boundaries.
+ * Records are assumed to be newline terminated; the bytes after the
+ * last newline in a chunk are carried over to the start of the next.
+ * A record longer than the chunk size is returned whole in a chunk
+ * of its own. The final chunk is whatever remains at the end of the
+ * stream, newline terminated or not.
+ * <br>
+ * For delimited data the first line of the stream is the header and
+ * it is put at the start of every chunk so each chunk can be uploaded
+ * as a self-contained set of records, as {@link RecordSplitter} does
+ * for files.
+ * <br>
+ * This class is not thread safe.
+ */
+final class RecordChunker
+{
+    private final InputStream m_Input;
+    private final int m_ChunkSize;
+    private final boolean m_HasHeader;
+
+    private byte [] m_Header;
+
+    private byte [] m_Carry;
+    private int m_CarryLength;
+    private boolean m_EndOfStream;
+
+    /**
+     * @param input The stream to read
+     * @param dataDescription The format of the data or <code>null</code>
+     * if the data has no header
+     * @param chunkSize The target size of each chunk in bytes
+     */
+    RecordChunker(InputStream input, DataDescription dataDescription, int chunkSize)
+    {
+        if (chunkSize < 1)
+        {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+
+        m_Input = input;
+        m_ChunkSize = chunkSize;
+        m_HasHeader = dataDescription != null
+                && dataDescription.getFormat() == DataFormat.DELIMITED;
+        m_Header = new byte[0];
+        m_Carry = new byte[0];
+    }
+
+    /**
+     * Read the next chunk.
+     *
+     * @return A buffer ready to be read holding exactly the chunk's
+     * bytes or null at the end of the stream
+     * @throws IOException If reading the stream fails
+     */
+    ByteBuffer next() throws IOException
+    {
+        // The header is empty until the first chunk has been read
+        int prefix = m_Header.length;
+        byte [] buffer = new byte[Math.max(m_ChunkSize, prefix + m_CarryLength)];
+        System.arraycopy(m_Header, 0, buffer, 0, prefix);
+        System.arraycopy(m_Carry, 0, buffer, prefix, m_CarryLength);
+        int length = prefix + m_CarryLength;
+        int searchFrom = prefix;
+
+        while (true)
+        {
+            while (length < buffer.length && !m_EndOfStream)
+            {
+                int read = m_Input.read(buffer, length, buffer.length - length);
+                if (read < 0)
+                {
+                    m_EndOfStream = true;
+                }
+                else
+                {
+                    length += read;
+                }
+            }
+
+            if (m_EndOfStream)
+            {
+                m_CarryLength = 0;
+                return (length == prefix) ? null : chunk(buffer, length);
+            }
+
+            if (m_HasHeader && m_Header.length == 0)
+            {
+                // The first chunk has the header and at least one record
+                searchFrom = Math.max(searchFrom, firstLineEnd(buffer, length));
+            }
+            int end = lastLineEnd(buffer, searchFrom, length);
+            if (end > 0)
+            {
+                m_Carry = Arrays.copyOfRange(buffer, end, length);
+                m_CarryLength = m_Carry.length;
+                return chunk(buffer, end);
+            }
+
+            // No newline in a full buffer: the record is longer than the chunk
+            searchFrom = length;
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+    }
+
+    /**
+     * Wrap the first <code>length</code> bytes of <code>buffer</code>,
+     * keeping the header line if this is the first chunk
+     */
+    private ByteBuffer chunk(byte [] buffer, int length)
+    {
+        if (m_HasHeader && m_Header.length == 0)
+        {
+            m_Header = Arrays.copyOf(buffer, firstLineEnd(buffer, length));
+        }
+        return ByteBuffer.wrap(buffer, 0, length);
+    }
+
+    /**
+     * The offset just after the first newline in
+     * <code>buffer[0, length)</code> or <code>length</code> if there is none.
+     */
+    private static int firstLineEnd(byte [] buffer, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (buffer[i] == DataDescription.LINE_ENDING)
+            {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * The offset just after the last newline in
+     * <code>buffer[from, length)</code> or 0 if there is none.
+     */
+    private static int lastLineEnd(byte [] buffer, int from, int length)
+    {
+        for (int i = length - 1; i >= from; i--)
+        {
+            if (buffer[i] == DataDescription.LINE_ENDING)
+            {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+}
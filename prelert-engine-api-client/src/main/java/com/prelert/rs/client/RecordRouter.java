@@ -0,0 +1,236 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.function.Function;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.prelert.job.DataDescription;
+import com.prelert.job.DataDescription.DataFormat;
+
+/**
+ * Decides which job each record of a combined data stream is sent to
+ * by {@link EngineApiClient#routedUpload(java.io.InputStream, DataDescription, RecordRouter)}.
+ * A record is routed either by the value of one of its fields, optionally
+ * mapped to a job Id, or by a function of the whole record. Records the
+ * router returns null for are not uploaded.
+ * <br>
+ * Routing by field reads the column of that name from delimited data
+ * or the top level field of that name from JSON data written one
+ * document per line. Single line data can only be routed by record.
+ */
+public final class RecordRouter
+{
+    private final String m_KeyField;
+    private final Function<String, String> m_KeyToJobId;
+    private final Function<String, String> m_RecordToJobId;
+
+    private RecordRouter(String keyField, Function<String, String> keyToJobId,
+            Function<String, String> recordToJobId)
+    {
+        m_KeyField = keyField;
+        m_KeyToJobId = keyToJobId;
+        m_RecordToJobId = recordToJobId;
+    }
+
+    /**
+     * Send each record to the job whose Id is the value of
+     * <code>keyField</code>.
+     *
+     * @param keyField The name of the field holding the job Id
+     * @return The router
+     */
+    public static RecordRouter byField(String keyField)
+    {
+        return byField(keyField, Function.identity());
+    }
+
+    /**
+     * Send each record to the job <code>keyToJobId</code> returns
+     * for the value of <code>keyField</code>.
+     *
+     * @param keyField The name of the field to route on, e.g. a tenant column
+     * @param keyToJobId Maps the field's value to a job Id or null
+     * to drop the record
+     * @return The router
+     */
+    public static RecordRouter byField(String keyField, Function<String, String> keyToJobId)
+    {
+        return new RecordRouter(Objects.requireNonNull(keyField),
+                Objects.requireNonNull(keyToJobId), null);
+    }
+
+    /**
+     * Send each record to the job <code>recordToJobId</code> returns
+     * for it.
+     *
+     * @param recordToJobId Maps the record, a single line without the
+     * newline, to a job Id or null to drop the record
+     * @return The router
+     */
+    public static RecordRouter byRecord(Function<String, String> recordToJobId)
+    {
+        return new RecordRouter(null, null, Objects.requireNonNull(recordToJobId));
+    }
+
+    /**
+     * Create the function routing the records of one upload.
+     *
+     * @param dataDescription The format of the data
+     * @param header The header line of delimited data without the
+     * newline or null for other formats
+     * @param jsonFactory Used to parse JSON records
+     * @return A function from a record to its job Id or null.
+     * It throws {@link UncheckedIOException} if a JSON record cannot be parsed.
+     */
+    Function<String, String> newRoute(DataDescription dataDescription, String header,
+            JsonFactory jsonFactory)
+    {
+        if (m_RecordToJobId != null)
+        {
+            return m_RecordToJobId;
+        }
+
+        DataFormat format = dataDescription.getFormat();
+        if (format == DataFormat.DELIMITED)
+        {
+            char delimiter = dataDescription.getFieldDelimiter();
+            char quote = dataDescription.getQuoteCharacter();
+            int column = indexOf(header, m_KeyField, delimiter, quote);
+            if (column < 0)
+            {
+                throw new IllegalArgumentException("Routing field '" + m_KeyField
+                        + "' is not in the header: " + header);
+            }
+            return record -> routeKey(field(record, column, delimiter, quote));
+        }
+        if (format == DataFormat.JSON)
+        {
+            return record -> routeKey(jsonField(record, jsonFactory));
+        }
+
+        throw new IllegalArgumentException("Data in format " + format
+                + " can only be routed by record");
+    }
+
+    private String routeKey(String key)
+    {
+        return (key == null) ? null : m_KeyToJobId.apply(key);
+    }
+
+    private static int indexOf(String header, String name, char delimiter, char quote)
+    {
+        for (int column = 0; ; column++)
+        {
+            String field = field(header, column, delimiter, quote);
+            if (field == null)
+            {
+                return -1;
+            }
+            if (field.equals(name))
+            {
+                return column;
+            }
+        }
+    }
+
+    /**
+     * The value of field <code>column</code> of a delimited record with
+     * quotes removed or null if the record has fewer fields. A quote
+     * character doubled inside a quoted field is a literal quote.
+     */
+    static String field(String record, int column, char delimiter, char quote)
+    {
+        int current = 0;
+        int i = 0;
+        int length = record.length();
+        while (i <= length)
+        {
+            StringBuilder value = (current == column) ? new StringBuilder() : null;
+            boolean quoted = false;
+            for (; i < length; i++)
+            {
+                char c = record.charAt(i);
+                if (c == quote)
+                {
+                    if (quoted && i + 1 < length && record.charAt(i + 1) == quote)
+                    {
+                        i++;
+                        if (value != null)
+                        {
+                            value.append(quote);
+                        }
+                    }
+                    else
+                    {
+                        quoted = !quoted;
+                    }
+                }
+                else if (c == delimiter && !quoted)
+                {
+                    break;
+                }
+                else if (c != '\r' && value != null)
+                {
+                    value.append(c);
+                }
+            }
+
+            if (value != null)
+            {
+                return value.toString();
+            }
+            current++;
+            i++;
+        }
+        return null;
+    }
+
+    private String jsonField(String record, JsonFactory jsonFactory)
+    {
+        try (JsonParser parser = jsonFactory.createParser(record))
+        {
+            if (parser.nextToken() != JsonToken.START_OBJECT)
+            {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String name = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (name.equals(m_KeyField))
+                {
+                    return value.isScalarValue() && value != JsonToken.VALUE_NULL
+                            ? parser.getText() : null;
+                }
+                parser.skipChildren();
+            }
+            return null;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
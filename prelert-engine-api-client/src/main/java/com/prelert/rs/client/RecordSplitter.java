@@ -0,0 +1,219 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.prelert.job.DataDescription;
+import com.prelert.job.DataDescription.DataFormat;
+
+/**
+ * Splits a data file into pieces that end on record boundaries.
+ * Records are assumed to be newline terminated, which is true for
+ * delimited data, single line data and JSON data written one document
+ * per line. Records must not contain embedded newlines.
+ * <br>
+ * For delimited data the first line of the file is the header and
+ * it is put at the start of every piece so each piece can be
+ * uploaded as a self-contained set of records.
+ */
+final class RecordSplitter
+{
+    private static final int SCAN_BUFFER_SIZE = 8192;
+
+    /**
+     * A contiguous region of the file made up of whole records.
+     */
+    static final class Piece
+    {
+        private final long m_Offset;
+        private final long m_Length;
+
+        Piece(long offset, long length)
+        {
+            m_Offset = offset;
+            m_Length = length;
+        }
+
+        long getOffset()
+        {
+            return m_Offset;
+        }
+
+        long getLength()
+        {
+            return m_Length;
+        }
+    }
+
+    private final FileChannel m_Channel;
+    private final byte [] m_Header;
+    private final List<Piece> m_Pieces;
+
+    /**
+     * @param channel The file to split
+     * @param dataDescription The format of the data in the file
+     * @param pieceSize The target size of each piece in bytes. Pieces are
+     * extended to the end of the record that straddles this size.
+     * @throws IOException If the file cannot be read
+     */
+    RecordSplitter(FileChannel channel, DataDescription dataDescription, long pieceSize)
+    throws IOException
+    {
+        this(channel, dataDescription, pieceSize, 0);
+    }
+
+    /**
+     * @param channel The file to split
+     * @param dataDescription The format of the data in the file
+     * @param pieceSize The target size of each piece in bytes. Pieces are
+     * extended to the end of the record that straddles this size.
+     * @param startOffset Only split the file from this offset, which must
+     * be the start of a record. The header is still read from the start
+     * of the file.
+     * @throws IOException If the file cannot be read
+     */
+    RecordSplitter(FileChannel channel, DataDescription dataDescription, long pieceSize,
+            long startOffset)
+    throws IOException
+    {
+        m_Channel = channel;
+
+        long start = 0;
+        if (dataDescription.getFormat() == DataFormat.DELIMITED)
+        {
+            start = nextLineStart(0);
+            m_Header = new byte[(int) start];
+            readFully(ByteBuffer.wrap(m_Header), 0);
+        }
+        else
+        {
+            m_Header = new byte[0];
+        }
+        start = Math.max(start, startOffset);
+
+        m_Pieces = new ArrayList<>();
+        long size = channel.size();
+        while (start < size)
+        {
+            long end = nextLineStart(Math.min(size, start + pieceSize) - 1);
+            m_Pieces.add(new Piece(start, end - start));
+            start = end;
+        }
+    }
+
+    /**
+     * Can data in this format be split on newlines?
+     *
+     * @param format The data format
+     * @return True if the records of this format are newline terminated
+     */
+    static boolean isSplittable(DataFormat format)
+    {
+        return format == DataFormat.DELIMITED || format == DataFormat.JSON
+                || format == DataFormat.SINGLE_LINE;
+    }
+
+    List<Piece> getPieces()
+    {
+        return m_Pieces;
+    }
+
+    /**
+     * The header line (including the newline) or an empty array
+     * if the data format does not have a header
+     *
+     * @return The header bytes
+     */
+    byte [] getHeader()
+    {
+        return m_Header;
+    }
+
+    /**
+     * Read a piece into a new buffer with the header in front of
+     * the piece's records.
+     *
+     * @param piece The piece to read
+     * @return A buffer ready to be read containing the header and records
+     * @throws IOException If reading the file fails
+     */
+    ByteBuffer read(Piece piece) throws IOException
+    {
+        long length = m_Header.length + piece.getLength();
+        if (length > Integer.MAX_VALUE)
+        {
+            throw new IOException("Piece at offset " + piece.getOffset() + " is too large: "
+                    + piece.getLength());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        buffer.put(m_Header);
+        readFully(buffer, piece.getOffset());
+        buffer.flip();
+        return buffer;
+    }
+
+    private void readFully(ByteBuffer buffer, long offset) throws IOException
+    {
+        long position = offset;
+        while (buffer.hasRemaining())
+        {
+            int read = m_Channel.read(buffer, position);
+            if (read < 0)
+            {
+                throw new IOException("Unexpected end of file at offset " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Find the offset just after the first newline at or after
+     * <code>from</code> or the file size if there is no newline.
+     */
+    private long nextLineStart(long from) throws IOException
+    {
+        long size = m_Channel.size();
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long position = Math.max(0, from);
+        while (position < size)
+        {
+            scan.clear();
+            int read = m_Channel.read(scan, position);
+            if (read <= 0)
+            {
+                break;
+            }
+            for (int i = 0; i < read; i++)
+            {
+                if (scan.get(i) == DataDescription.LINE_ENDING)
+                {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+}
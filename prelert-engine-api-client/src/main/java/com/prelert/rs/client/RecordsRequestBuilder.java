@@ -21,16 +21,21 @@ package com.prelert.rs.client;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.prelert.job.results.AnomalyRecord;
+import com.prelert.job.results.AnomalyRecordBatch;
 import com.prelert.rs.data.Pagination;
 
 public class RecordsRequestBuilder extends BaseJobRequestBuilder<AnomalyRecord>
 {
     private final Map<String, String> m_Params;
+    private boolean m_ScoresOnly;
 
     /**
      * @param client The Engine API client
@@ -181,17 +186,142 @@ public class RecordsRequestBuilder extends BaseJobRequestBuilder<AnomalyRecord>
     }
 
     /**
-     * Returns the page with the records that were requested
+     * Sets whether to read only the scores and the fields that identify
+     * each record, leaving the causes and influencers <code>null</code>.
+     * The records are still sent by the API in full but the unwanted
+     * parts are skipped as they are read, which suits listing the top
+     * anomalies. Default is false.
+     * <br>
+     * Pages of scores only records are not kept in the client's
+     * {@link ResultsCache}.
+     *
+     * @param scoresOnly Should causes and influencers be skipped or not
+     * @return this {@code Builder} object
+     */
+    public RecordsRequestBuilder scoresOnly(boolean scoresOnly)
+    {
+        m_ScoresOnly = scoresOnly;
+        return this;
+    }
+
+    /**
+     * Returns the page with the records that were requested.
+     * Served from the client's {@link ResultsCache} if it has one.
      *
      * @return A {@link Pagination} object containing the resulted {@link AnomalyRecord} objects
      * @throws IOException If HTTP GET fails
      */
     public Pagination<AnomalyRecord> get() throws IOException
+    {
+        if (m_ScoresOnly)
+        {
+            return createHttpGetRequester().getPage(buildUrl(), pageType());
+        }
+        return createHttpGetRequester().getCachedPage(jobId(), buildUrl(), pageType(),
+                AnomalyRecord::getTimestamp, AnomalyRecord::isInterim);
+    }
+
+    /**
+     * Returns the page with the records that were requested without blocking
+     *
+     * @return A future of the {@link Pagination} object containing the resulted
+     * {@link AnomalyRecord} objects
+     */
+    public CompletableFuture<Pagination<AnomalyRecord>> getAsync()
+    {
+        return createHttpGetRequester().getPageAsync(buildUrl(), pageType());
+    }
+
+    /**
+     * Returns the page with the records that were requested decoded
+     * straight into columns. Far less heap is used than for a page of
+     * {@link AnomalyRecord} objects but record causes are dropped.
+     * The results cache is not used.
+     *
+     * @return The batch of records or <code>null</code> if the request
+     * failed, in which case see {@link EngineApiClient#getLastError()}
+     * @throws IOException If HTTP GET fails
+     */
+    public AnomalyRecordBatch getBatch() throws IOException
+    {
+        return new HttpGetRequester<AnomalyRecordBatch>(client()).get(buildUrl(),
+                new TypeReference<AnomalyRecordBatch>() {});
+    }
+
+    /**
+     * Returns the page with the records that were requested decoded
+     * straight into columns without blocking
+     *
+     * @return A future of the batch of records
+     * @see #getBatch()
+     */
+    public CompletableFuture<AnomalyRecordBatch> getBatchAsync()
+    {
+        return new HttpGetRequester<AnomalyRecordBatch>(client()).getAsync(buildUrl(),
+                new TypeReference<AnomalyRecordBatch>() {});
+    }
+
+    /**
+     * Sets how many pages {@link #iterator()} and {@link #stream()} fetch
+     * in the background ahead of the page being read. Default is
+     * {@value #DEFAULT_PREFETCH_PAGES}.
+     *
+     * @param pages The number of pages to prefetch, 0 fetches each page
+     * only when it is needed
+     * @return this {@code Builder} object
+     */
+    public RecordsRequestBuilder prefetch(int pages)
+    {
+        setPrefetchPages(pages);
+        return this;
+    }
+
+    /**
+     * Returns an iterator over all the records that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. A failed request is thrown as an
+     * {@link java.io.UncheckedIOException}.
+     *
+     * @return An iterator of {@link AnomalyRecord} objects
+     */
+    public Iterator<AnomalyRecord> iterator()
+    {
+        return pageIterator(buildUrl(), pageType());
+    }
+
+    /**
+     * Returns a lazy stream of all the records that match the request,
+     * following the next page links. The page size is set by
+     * {@link #take(long)}. Close the stream if it is not read to the end
+     * so no further pages are fetched.
+     *
+     * @return A stream of {@link AnomalyRecord} objects
+     */
+    public Stream<AnomalyRecord> stream()
+    {
+        return pageStream(buildUrl(), pageType());
+    }
+
+    /**
+     * The type to read pages as. A page of {@link ScoresOnlyRecord}
+     * can safely be used as a page of {@link AnomalyRecord}: the list
+     * element type is erased and every document is an AnomalyRecord.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private TypeReference<Pagination<AnomalyRecord>> pageType()
+    {
+        if (m_ScoresOnly)
+        {
+            return (TypeReference) new TypeReference<Pagination<ScoresOnlyRecord>>() {};
+        }
+        return new TypeReference<Pagination<AnomalyRecord>>() {};
+    }
+
+    private String buildUrl()
     {
         StringBuilder url = new StringBuilder();
         url.append(baseUrl()).append("/results/").append(jobId()).append("/records");
         appendParams(m_Params, url);
-        return createHttpGetRequester().getPage(url.toString(),
-                new TypeReference<Pagination<AnomalyRecord>>() {});
+        return url.toString();
     }
 }
@@ -0,0 +1,268 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A size bounded cache of result queries for an {@link EngineApiClient}.
+ * Entries are keyed on the full request URL so they are specific to the
+ * job, time range and all other query parameters.
+ * <br>
+ * Results older than the job's result finalization window, counted
+ * back from the latest record the job has processed, can only change
+ * if the job is renormalized so they are kept for the long
+ * <code>finalizedTtl</code>. Pages that contain any recent or interim
+ * results, or that are empty, expire after the short
+ * <code>recentTtl</code>. When the cache is full the least recently
+ * used entry is evicted.
+ * <br>
+ * Cached objects are shared between callers and must not be modified.
+ * Call {@link #invalidate(String)} after a job's results are known to
+ * have changed, for example after new data has been renormalized.
+ * <br>
+ * This class is thread safe.
+ */
+public class ResultsCache
+{
+    public static final int DEFAULT_MAX_ENTRIES = 1000;
+    public static final long DEFAULT_RECENT_TTL_SECONDS = 30;
+    public static final long DEFAULT_FINALIZED_TTL_SECONDS = 3600;
+
+    private static final class FinalBefore
+    {
+        private final long m_TimeMs;
+        private final long m_ExpiryMs;
+
+        FinalBefore(long timeMs, long expiryMs)
+        {
+            m_TimeMs = timeMs;
+            m_ExpiryMs = expiryMs;
+        }
+    }
+
+    private static final class Entry
+    {
+        private final String m_JobId;
+        private final Object m_Value;
+        private final long m_ExpiryMs;
+
+        Entry(String jobId, Object value, long expiryMs)
+        {
+            m_JobId = jobId;
+            m_Value = value;
+            m_ExpiryMs = expiryMs;
+        }
+    }
+
+    private final int m_MaxEntries;
+    private final long m_RecentTtlMs;
+    private final long m_FinalizedTtlMs;
+    private final LinkedHashMap<String, Entry> m_Entries;
+    private final Map<String, FinalBefore> m_FinalBefore;
+
+    private final AtomicLong m_Hits;
+    private final AtomicLong m_Misses;
+    private final AtomicLong m_Evictions;
+
+    /**
+     * Create a cache of {@value #DEFAULT_MAX_ENTRIES} entries that keeps
+     * recent results for {@value #DEFAULT_RECENT_TTL_SECONDS} seconds and
+     * finalized results for {@value #DEFAULT_FINALIZED_TTL_SECONDS} seconds
+     */
+    public ResultsCache()
+    {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_RECENT_TTL_SECONDS, DEFAULT_FINALIZED_TTL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param maxEntries The maximum number of cached queries
+     * @param recentTtl How long to keep pages with recent or interim results
+     * @param finalizedTtl How long to keep pages of finalized results
+     * @param unit The unit of the TTLs
+     */
+    public ResultsCache(int maxEntries, long recentTtl, long finalizedTtl, TimeUnit unit)
+    {
+        if (maxEntries < 1)
+        {
+            throw new IllegalArgumentException("Max entries must be positive: " + maxEntries);
+        }
+        if (recentTtl < 0 || finalizedTtl < 0)
+        {
+            throw new IllegalArgumentException("TTLs must not be negative");
+        }
+
+        m_MaxEntries = maxEntries;
+        m_RecentTtlMs = unit.toMillis(recentTtl);
+        m_FinalizedTtlMs = unit.toMillis(finalizedTtl);
+        m_Entries = new LinkedHashMap<>(16, 0.75f, true);
+        m_FinalBefore = new ConcurrentHashMap<>();
+        m_Hits = new AtomicLong();
+        m_Misses = new AtomicLong();
+        m_Evictions = new AtomicLong();
+    }
+
+    /**
+     * Get the cached result of a query
+     *
+     * @param url The full request URL
+     * @return The cached object or null if it is not cached or has expired
+     */
+    @SuppressWarnings("unchecked")
+    synchronized <V> V get(String url)
+    {
+        Entry entry = m_Entries.get(url);
+        if (entry != null && entry.m_ExpiryMs <= System.currentTimeMillis())
+        {
+            m_Entries.remove(url);
+            entry = null;
+        }
+
+        if (entry == null)
+        {
+            m_Misses.incrementAndGet();
+            return null;
+        }
+
+        m_Hits.incrementAndGet();
+        return (V) entry.m_Value;
+    }
+
+    /**
+     * Cache the result of a query
+     *
+     * @param jobId The job the results belong to
+     * @param url The full request URL
+     * @param value The parsed response
+     * @param finalized True if none of the results can change
+     */
+    synchronized void put(String jobId, String url, Object value, boolean finalized)
+    {
+        long ttl = finalized ? m_FinalizedTtlMs : m_RecentTtlMs;
+        if (ttl == 0)
+        {
+            return;
+        }
+
+        m_Entries.put(url, new Entry(jobId, value, System.currentTimeMillis() + ttl));
+        while (m_Entries.size() > m_MaxEntries)
+        {
+            Iterator<String> eldest = m_Entries.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+            m_Evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * The time before which a job's results are final, looked up with
+     * <code>lookup</code>. The time advances as the job processes data
+     * so it is looked up again once it is older than the recent TTL.
+     * A failed lookup, <code>Long.MIN_VALUE</code>, is remembered for
+     * as long so an unreadable job is not asked for on every miss.
+     */
+    long finalBeforeMs(String jobId, Function<String, Long> lookup)
+    {
+        long now = System.currentTimeMillis();
+        FinalBefore finalBefore = m_FinalBefore.get(jobId);
+        if (finalBefore == null || finalBefore.m_ExpiryMs <= now)
+        {
+            finalBefore = new FinalBefore(lookup.apply(jobId), now + m_RecentTtlMs);
+            m_FinalBefore.put(jobId, finalBefore);
+        }
+        return finalBefore.m_TimeMs;
+    }
+
+    /**
+     * Remove all the cached results of a job
+     *
+     * @param jobId The job's unique Id
+     */
+    public synchronized void invalidate(String jobId)
+    {
+        m_Entries.values().removeIf(entry -> Objects.equals(entry.m_JobId, jobId));
+        m_FinalBefore.remove(jobId);
+    }
+
+    /**
+     * Remove all the cached results
+     */
+    public synchronized void invalidateAll()
+    {
+        m_Entries.clear();
+        m_FinalBefore.clear();
+    }
+
+    /**
+     * @return The number of cached queries, including any that
+     * have expired but not yet been removed
+     */
+    public synchronized int size()
+    {
+        return m_Entries.size();
+    }
+
+    public int getMaxEntries()
+    {
+        return m_MaxEntries;
+    }
+
+    /**
+     * @return The number of queries answered from the cache
+     */
+    public long getHitCount()
+    {
+        return m_Hits.get();
+    }
+
+    /**
+     * @return The number of queries that were not cached or had expired
+     */
+    public long getMissCount()
+    {
+        return m_Misses.get();
+    }
+
+    /**
+     * @return The number of entries removed to make room for new ones
+     */
+    public long getEvictionCount()
+    {
+        return m_Evictions.get();
+    }
+
+    /**
+     * @return The proportion of queries answered from the cache
+     * or 0 if there have been no queries
+     */
+    public double getHitRate()
+    {
+        long hits = m_Hits.get();
+        long total = hits + m_Misses.get();
+        return (total == 0) ? 0.0 : (double) hits / total;
+    }
+}
@@ -0,0 +1,570 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+import org.apache.log4j.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prelert.job.DataCounts;
+import com.prelert.job.JobDetails;
+import com.prelert.job.results.AnomalyRecord;
+import com.prelert.job.results.Bucket;
+import com.prelert.rs.data.ObjectMapperFactory;
+import com.prelert.rs.data.Pagination;
+import com.prelert.rs.data.SingleDocument;
+
+/**
+ * Exports all the records or buckets of a job in timestamp order.
+ * <br>
+ * Rather than paging through the whole history with ever increasing
+ * <code>skip</code> values the time span is split into equal slices that
+ * are queried concurrently with the <code>start</code> and <code>end</code>
+ * parameters. Each slice is written to a temporary file and the slices
+ * are copied to the output in order, so at most <code>parallelism</code>
+ * slices are held on disk and only a page per slice in memory.
+ * <br>
+ * A listener can be told as each slice is written so that an export
+ * that fails part way through can be restarted with
+ * {@link #resumeFromSlice(int)}. A resumed export must use the same time
+ * span and number of slices as the original so it must be given an
+ * explicit start and end: the span of an export of all the results moves
+ * on as the job's latest record time does.
+ *
+ * <pre>
+ * try (OutputStream out = new FileOutputStream("records.json"))
+ * {
+ *     new ResultsExporter(client, jobId)
+ *             .format(ResultsExporter.Format.NDJSON)
+ *             .parallelism(8)
+ *             .exportRecords(out);
+ * }
+ * </pre>
+ */
+public class ResultsExporter
+{
+    private static final Logger LOGGER = Logger.getLogger(ResultsExporter.class);
+
+    public static final int DEFAULT_SLICES = 32;
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+
+    private static final String [] RECORD_COLUMNS = {
+        AnomalyRecord.TIMESTAMP, AnomalyRecord.DETECTOR_INDEX, AnomalyRecord.FUNCTION,
+        AnomalyRecord.FIELD_NAME, AnomalyRecord.BY_FIELD_NAME, AnomalyRecord.BY_FIELD_VALUE,
+        AnomalyRecord.OVER_FIELD_NAME, AnomalyRecord.OVER_FIELD_VALUE,
+        AnomalyRecord.PARTITION_FIELD_NAME, AnomalyRecord.PARTITION_FIELD_VALUE,
+        AnomalyRecord.ACTUAL, AnomalyRecord.TYPICAL, AnomalyRecord.PROBABILITY,
+        AnomalyRecord.NORMALIZED_PROBABILITY, AnomalyRecord.ANOMALY_SCORE,
+        AnomalyRecord.IS_INTERIM
+    };
+
+    private static final String [] BUCKET_COLUMNS = {
+        Bucket.TIMESTAMP, Bucket.BUCKET_SPAN, Bucket.ANOMALY_SCORE,
+        Bucket.MAX_NORMALIZED_PROBABILITY, Bucket.RECORD_COUNT, Bucket.EVENT_COUNT,
+        Bucket.IS_INTERIM
+    };
+
+    /**
+     * Output formats
+     */
+    public enum Format
+    {
+        /** One JSON document per line */
+        NDJSON,
+        /** A header row then one row per document. Arrays are written as JSON */
+        CSV
+    }
+
+    /**
+     * Fetches the documents in the slice [start, end) in timestamp order
+     */
+    @FunctionalInterface
+    private interface SliceQuery<T>
+    {
+        Iterator<T> documents(long start, long end);
+    }
+
+    private final EngineApiClient m_Client;
+    private final String m_JobId;
+    private final ObjectMapper m_JsonMapper;
+
+    private Format m_Format = Format.NDJSON;
+    private int m_Slices = DEFAULT_SLICES;
+    private int m_Parallelism = DEFAULT_PARALLELISM;
+    private int m_PageSize = DEFAULT_PAGE_SIZE;
+    private int m_FirstSlice;
+    private boolean m_IncludeInterim;
+    private IntConsumer m_SliceListener = slice -> {};
+
+    /**
+     * @param client The Engine API client
+     * @param jobId The Job's unique Id
+     */
+    public ResultsExporter(EngineApiClient client, String jobId)
+    {
+        m_Client = client;
+        m_JobId = jobId;
+        m_JsonMapper = ObjectMapperFactory.shared().getMapper();
+    }
+
+    /**
+     * Sets the output format. Default is NDJSON.
+     *
+     * @param format The output format
+     * @return this {@code ResultsExporter} object
+     */
+    public ResultsExporter format(Format format)
+    {
+        m_Format = Objects.requireNonNull(format);
+        return this;
+    }
+
+    /**
+     * Sets the number of slices the time span is split into.
+     * Default is {@value #DEFAULT_SLICES}.
+     *
+     * @param slices The number of slices
+     * @return this {@code ResultsExporter} object
+     */
+    public ResultsExporter slices(int slices)
+    {
+        m_Slices = checkPositive(slices, "Slices");
+        return this;
+    }
+
+    /**
+     * Sets the number of slices fetched concurrently.
+     * Default is {@value #DEFAULT_PARALLELISM}.
+     *
+     * @param parallelism The number of concurrent slices
+     * @return this {@code ResultsExporter} object
+     */
+    public ResultsExporter parallelism(int parallelism)
+    {
+        m_Parallelism = checkPositive(parallelism, "Parallelism");
+        return this;
+    }
+
+    /**
+     * Sets the number of documents requested per page.
+     * Default is {@value #DEFAULT_PAGE_SIZE}.
+     *
+     * @param pageSize The page size
+     * @return this {@code ResultsExporter} object
+     */
+    public ResultsExporter pageSize(int pageSize)
+    {
+        m_PageSize = checkPositive(pageSize, "Page size");
+        return this;
+    }
+
+    /**
+     * Sets whether interim results are exported. Default is false.
+     *
+     * @param includeInterim Should interim results be included or not
+     * @return this {@code ResultsExporter} object
+     */
+    public ResultsExporter includeInterim(boolean includeInterim)
+    {
+        m_IncludeInterim = includeInterim;
+        return this;
+    }
+
+    /**
+     * Skip the slices before <code>slice</code>, which have already been
+     * written by an earlier export. The CSV header is not written again
+     * when resuming. Only an export with an explicit start and end can
+     * be resumed.
+     *
+     * @param slice The index of the first slice to export
+     * @return this {@code ResultsExporter} object
+     */
+    public ResultsExporter resumeFromSlice(int slice)
+    {
+        if (slice < 0)
+        {
+            throw new IllegalArgumentException("Slice must not be negative: " + slice);
+        }
+        m_FirstSlice = slice;
+        return this;
+    }
+
+    /**
+     * Set a listener that is passed the index of each slice once it
+     * has been completely written to the output
+     *
+     * @param listener The listener
+     * @return this {@code ResultsExporter} object
+     */
+    public ResultsExporter sliceListener(IntConsumer listener)
+    {
+        m_SliceListener = Objects.requireNonNull(listener);
+        return this;
+    }
+
+    /**
+     * Export all the job's records from the first bucket to the
+     * latest record time. This cannot be resumed.
+     *
+     * @param out The output, this is not closed
+     * @return The number of records written
+     * @throws IOException If a request or writing fails
+     * @throws IllegalStateException If {@link #resumeFromSlice(int)} was set
+     */
+    public long exportRecords(OutputStream out) throws IOException
+    {
+        long [] span = jobSpan();
+        return exportRecords(span[0], span[1], out);
+    }
+
+    /**
+     * Export the job's records with timestamps in [start, end)
+     *
+     * @param start The start as seconds from the Epoch
+     * @param end The end as seconds from the Epoch
+     * @param out The output, this is not closed
+     * @return The number of records written
+     * @throws IOException If a request or writing fails
+     */
+    public long exportRecords(long start, long end, OutputStream out) throws IOException
+    {
+        return export(start, end, out, RECORD_COLUMNS,
+                (sliceStart, sliceEnd) -> m_Client.prepareGetRecords(m_JobId)
+                        .start(sliceStart).end(sliceEnd)
+                        .sortField(AnomalyRecord.TIMESTAMP).descending(false)
+                        .includeInterim(m_IncludeInterim)
+                        .take(m_PageSize).iterator());
+    }
+
+    /**
+     * Export all the job's buckets from the first bucket to the
+     * latest record time. This cannot be resumed.
+     *
+     * @param out The output, this is not closed
+     * @return The number of buckets written
+     * @throws IOException If a request or writing fails
+     * @throws IllegalStateException If {@link #resumeFromSlice(int)} was set
+     */
+    public long exportBuckets(OutputStream out) throws IOException
+    {
+        long [] span = jobSpan();
+        return exportBuckets(span[0], span[1], out);
+    }
+
+    /**
+     * Export the job's buckets with timestamps in [start, end)
+     *
+     * @param start The start as seconds from the Epoch
+     * @param end The end as seconds from the Epoch
+     * @param out The output, this is not closed
+     * @return The number of buckets written
+     * @throws IOException If a request or writing fails
+     */
+    public long exportBuckets(long start, long end, OutputStream out) throws IOException
+    {
+        return export(start, end, out, BUCKET_COLUMNS,
+                (sliceStart, sliceEnd) -> m_Client.prepareGetBuckets(m_JobId)
+                        .start(sliceStart).end(sliceEnd)
+                        .includeInterim(m_IncludeInterim)
+                        .take(m_PageSize).iterator());
+    }
+
+    private <T> long export(long start, long end, OutputStream out, String [] columns,
+            SliceQuery<T> query)
+    throws IOException
+    {
+        List<long []> slices = split(start, end);
+        LOGGER.info(String.format("Exporting results of job %s from %d to %d in %d slices",
+                m_JobId, start, end, slices.size()));
+
+        if (m_Format == Format.CSV && m_FirstSlice == 0)
+        {
+            out.write(csvHeader(columns).getBytes(StandardCharsets.UTF_8));
+        }
+
+        ExecutorService fetchers = Executors.newFixedThreadPool(m_Parallelism);
+        Deque<Future<SliceFile>> fetchAhead = new ArrayDeque<>();
+        try
+        {
+            // Fetch at most one slice per thread ahead of the slice being copied
+            int nextSlice = m_FirstSlice;
+            while (nextSlice < slices.size() && fetchAhead.size() < m_Parallelism)
+            {
+                fetchAhead.add(submitSlice(fetchers, nextSlice, slices.get(nextSlice++),
+                        columns, query));
+            }
+
+            long documentCount = 0;
+            while (!fetchAhead.isEmpty())
+            {
+                SliceFile slice = awaitSlice(fetchAhead.poll());
+                if (nextSlice < slices.size())
+                {
+                    fetchAhead.add(submitSlice(fetchers, nextSlice, slices.get(nextSlice++),
+                            columns, query));
+                }
+
+                try
+                {
+                    Files.copy(slice.m_Path, out);
+                }
+                finally
+                {
+                    Files.deleteIfExists(slice.m_Path);
+                }
+                out.flush();
+                documentCount += slice.m_DocumentCount;
+                m_SliceListener.accept(slice.m_Index);
+            }
+            return documentCount;
+        }
+        finally
+        {
+            fetchers.shutdownNow();
+            for (Future<SliceFile> pending : fetchAhead)
+            {
+                pending.cancel(true);
+                deletePending(pending);
+            }
+        }
+    }
+
+    private <T> Future<SliceFile> submitSlice(ExecutorService executor, int index,
+            long [] slice, String [] columns, SliceQuery<T> query)
+    {
+        return executor.submit(() -> writeSlice(index, slice[0], slice[1], columns, query));
+    }
+
+    private <T> SliceFile writeSlice(int index, long start, long end, String [] columns,
+            SliceQuery<T> query)
+    throws IOException
+    {
+        LOGGER.debug(String.format("Fetching slice %d [%d, %d)", index, start, end));
+
+        Path path = Files.createTempFile("prelert-export-" + index + "-", ".part");
+        long count = 0;
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8))
+        {
+            Iterator<T> documents = query.documents(start, end);
+            while (documents.hasNext())
+            {
+                writeDocument(documents.next(), columns, writer);
+                count++;
+            }
+        }
+        catch (IOException | UncheckedIOException e)
+        {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return new SliceFile(index, path, count);
+    }
+
+    private void writeDocument(Object document, String [] columns, Writer writer)
+    throws IOException
+    {
+        if (m_Format == Format.NDJSON)
+        {
+            writer.write(m_JsonMapper.writeValueAsString(document));
+            writer.write('\n');
+            return;
+        }
+
+        JsonNode node = m_JsonMapper.valueToTree(document);
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < columns.length; i++)
+        {
+            if (i > 0)
+            {
+                row.append(',');
+            }
+            JsonNode value = node.get(columns[i]);
+            if (value != null && !value.isNull())
+            {
+                row.append(csvEscape(value.isContainerNode() ? value.toString()
+                        : value.asText()));
+            }
+        }
+        writer.write(row.append('\n').toString());
+    }
+
+    /**
+     * Split [start, end) into at most <code>m_Slices</code> slices
+     * of whole seconds
+     */
+    private List<long []> split(long start, long end)
+    {
+        List<long []> slices = new ArrayList<>();
+        long span = end - start;
+        if (span <= 0)
+        {
+            return slices;
+        }
+
+        int count = (int) Math.min(m_Slices, span);
+        for (int i = 0; i < count; i++)
+        {
+            slices.add(new long [] {start + span * i / count, start + span * (i + 1) / count});
+        }
+        return slices;
+    }
+
+    /**
+     * The span from the first bucket to just after the latest record.
+     * This changes as the job processes data, so slices computed from
+     * it cannot be matched up with those of an earlier export.
+     */
+    private long [] jobSpan() throws IOException
+    {
+        if (m_FirstSlice > 0)
+        {
+            throw new IllegalStateException("An export of all results cannot be resumed: "
+                    + "give the start and end of the original export");
+        }
+
+        Pagination<Bucket> first = m_Client.prepareGetBuckets(m_JobId).take(1).get();
+        if (first.getDocuments() == null || first.getDocuments().isEmpty())
+        {
+            return new long [] {0, 0};
+        }
+        long start = toSeconds(first.getDocuments().get(0).getTimestamp());
+
+        SingleDocument<JobDetails> job = m_Client.getJob(m_JobId);
+        if (job.getDocument() == null)
+        {
+            throw new IOException("Cannot read the details of job " + m_JobId);
+        }
+        DataCounts counts = job.getDocument().getCounts();
+        Date latest = (counts == null) ? null : counts.getLatestRecordTimeStamp();
+        if (latest == null)
+        {
+            latest = job.getDocument().getLastDataTime();
+        }
+        long end = (latest == null) ? start + 1 : toSeconds(latest) + 1;
+
+        return new long [] {start, Math.max(start + 1, end)};
+    }
+
+    private static long toSeconds(Date date)
+    {
+        return date.getTime() / 1000;
+    }
+
+    private static String csvHeader(String [] columns)
+    {
+        return String.join(",", columns) + '\n';
+    }
+
+    private static String csvEscape(String value)
+    {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0)
+        {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static SliceFile awaitSlice(Future<SliceFile> slice) throws IOException
+    {
+        try
+        {
+            return slice.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof UncheckedIOException)
+            {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Remove the file of a slice that was fetched but not written
+     */
+    private static void deletePending(Future<SliceFile> pending)
+    {
+        if (pending.isDone() && !pending.isCancelled())
+        {
+            try
+            {
+                Files.deleteIfExists(pending.get().m_Path);
+            }
+            catch (InterruptedException | ExecutionException | IOException e)
+            {
+                LOGGER.debug("Could not remove export slice file", e);
+            }
+        }
+    }
+
+    private static int checkPositive(int value, String name)
+    {
+        if (value < 1)
+        {
+            throw new IllegalArgumentException(name + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    private static final class SliceFile
+    {
+        private final int m_Index;
+        private final Path m_Path;
+        private final long m_DocumentCount;
+
+        SliceFile(int index, Path path, long documentCount)
+        {
+            m_Index = index;
+            m_Path = path;
+            m_DocumentCount = documentCount;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.client.api.Request;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.client.util.DeferredContentProvider;
+import org.eclipse.jetty.util.Callback;
+
+import com.google.common.base.Strings;
+import com.prelert.job.DataDescription;
+
+/**
+ * The upload to one job of a routed upload. Records are collected in a
+ * pooled buffer and each full buffer is offered to the job's request,
+ * subject to the job's own {@link UploadFlowController} so a job that
+ * reads slowly cannot use up the unsent bytes allowed to the others.
+ * The request is sent as soon as the stream is created so all the jobs
+ * of a routed upload receive their data concurrently.
+ */
+final class RoutedStream
+{
+    private final String m_JobId;
+    private final Request m_Request;
+    private final DeferredContentProvider m_Content;
+    private final BufferingResponseListener m_Listener;
+    private final CountDownLatch m_Started;
+    private final CountDownLatch m_Complete;
+    private final BufferPool m_BufferPool;
+    private final UploadFlowController m_FlowController;
+
+    private volatile int m_Status;
+    private ByteBuffer m_Buffer;
+
+    /**
+     * Send the request, wait for it to start on a connection and write
+     * <code>header</code> to it. If every connection is in use, for
+     * example by other uploads or alert long polls, the request waits in
+     * the HTTP client's queue and none of its data could be sent, so the
+     * upload is abandoned if the request has not started in time.
+     *
+     * @param jobId The job's unique Id
+     * @param request The unsent upload request for the job
+     * @param bufferPool The pool of buffers to collect records in
+     * @param flowController The limit on the job's unsent bytes
+     * @param header Bytes to start the upload with, possibly empty
+     * @param startTimeoutMs How long to wait for the request to start
+     * or 0 to wait indefinitely
+     * @throws IOException If the request does not start in time or the
+     * thread is interrupted while waiting
+     */
+    RoutedStream(String jobId, Request request, BufferPool bufferPool,
+            UploadFlowController flowController, byte [] header, long startTimeoutMs)
+    throws IOException
+    {
+        m_JobId = jobId;
+        m_Request = request;
+        m_Content = new DeferredContentProvider();
+        m_Started = new CountDownLatch(1);
+        m_Complete = new CountDownLatch(1);
+        m_BufferPool = bufferPool;
+        m_FlowController = flowController;
+        m_Buffer = bufferPool.acquire();
+        m_Listener = new BufferingResponseListener()
+        {
+            @Override
+            public void onComplete(Result result)
+            {
+                m_Status = result.getResponse().getStatus();
+                m_Complete.countDown();
+                m_Started.countDown();
+            }
+        };
+
+        request.content(m_Content).onRequestBegin(begun -> m_Started.countDown())
+                .send(m_Listener);
+        try
+        {
+            awaitStart(startTimeoutMs);
+            if (header.length > 0)
+            {
+                offer(ByteBuffer.wrap(header), null);
+            }
+        }
+        catch (IOException e)
+        {
+            abort(e);
+            m_BufferPool.release(m_Buffer);
+            throw e;
+        }
+    }
+
+    String getJobId()
+    {
+        return m_JobId;
+    }
+
+    /**
+     * Append a record and its newline. The record is dropped if the
+     * engine has already replied to the request.
+     *
+     * @param record The record without a newline
+     * @throws IOException If interrupted while waiting to send data
+     */
+    void writeRecord(byte [] record) throws IOException
+    {
+        if (!isActive())
+        {
+            return;
+        }
+        if (record.length + 1 > m_Buffer.remaining())
+        {
+            flush();
+        }
+        if (record.length + 1 > m_Buffer.remaining())
+        {
+            // Larger than a pooled buffer so send it in a buffer of its own
+            ByteBuffer large = ByteBuffer.allocate(record.length + 1);
+            large.put(record).put((byte) DataDescription.LINE_ENDING).flip();
+            offer(large, null);
+            return;
+        }
+        m_Buffer.put(record).put((byte) DataDescription.LINE_ENDING);
+    }
+
+    /**
+     * Send the remaining records and end the request's content.
+     *
+     * @throws IOException If interrupted while waiting to send data
+     */
+    void close() throws IOException
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            m_BufferPool.release(m_Buffer);
+            m_Content.close();
+        }
+    }
+
+    /**
+     * Abandon the upload.
+     *
+     * @param cause The reason the upload was abandoned
+     */
+    void abort(Throwable cause)
+    {
+        m_Request.abort(cause);
+        m_Content.close();
+    }
+
+    /**
+     * Wait for the engine's reply.
+     *
+     * @return The HTTP status of the reply
+     * @throws InterruptedIOException If interrupted while waiting
+     */
+    int awaitStatus() throws InterruptedIOException
+    {
+        try
+        {
+            m_Complete.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the upload to " + m_JobId);
+        }
+        return m_Status;
+    }
+
+    /**
+     * @return The content of the engine's reply, empty if there was none
+     */
+    String getContent()
+    {
+        return Strings.nullToEmpty(m_Listener.getContentAsString());
+    }
+
+    /**
+     * Wait until the request has started, or completed without starting
+     */
+    private void awaitStart(long timeoutMs) throws IOException
+    {
+        try
+        {
+            if (timeoutMs <= 0)
+            {
+                m_Started.await();
+            }
+            else if (!m_Started.await(timeoutMs, TimeUnit.MILLISECONDS))
+            {
+                throw new IOException("The upload to " + m_JobId + " did not start within "
+                        + timeoutMs + "ms, all connections are in use");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the upload to "
+                    + m_JobId + " to start");
+        }
+    }
+
+    private boolean isActive()
+    {
+        return !m_Content.isClosed() && m_Complete.getCount() > 0;
+    }
+
+    private void flush() throws IOException
+    {
+        if (m_Buffer.position() == 0)
+        {
+            return;
+        }
+        m_Buffer.flip();
+        ByteBuffer full = m_Buffer;
+        m_Buffer = m_BufferPool.acquire();
+        offer(full, full);
+    }
+
+    /**
+     * Offer <code>buffer</code> to the request once the flow controller
+     * allows it, returning <code>pooled</code> to the pool when it has
+     * been sent
+     */
+    private void offer(ByteBuffer buffer, ByteBuffer pooled) throws IOException
+    {
+        int length = buffer.remaining();
+        if (!m_FlowController.acquire(length, this::isActive))
+        {
+            if (pooled != null)
+            {
+                m_BufferPool.release(pooled);
+            }
+            return;
+        }
+
+        if (pooled != null)
+        {
+            m_Content.offer(buffer, m_FlowController.releaseCallback(length,
+                    m_BufferPool.releaseCallback(pooled)));
+        }
+        else
+        {
+            m_Content.offer(buffer, m_FlowController.releaseCallback(length, Callback.NOOP));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+
+package com.prelert.rs.client;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.prelert.job.results.AnomalyRecord;
+
+/**
+ * An anomaly record read without its causes and influencers, which
+ * are skipped over in the response rather than parsed or buffered.
+ * The records of a {@linkplain RecordsRequestBuilder#scoresOnly(boolean)
+ * scores only} request are of this type. Being a distinct type it has
+ * its own cached reader and its pages are never confused with pages of
+ * full records.
+ * <br>
+ * The class is public so the Jackson Afterburner module can generate
+ * its deserialiser.
+ */
+@JsonIgnoreProperties({"id", "parent", AnomalyRecord.CAUSES, AnomalyRecord.INFLUENCERS})
+public class ScoresOnlyRecord extends AnomalyRecord
+{
+}
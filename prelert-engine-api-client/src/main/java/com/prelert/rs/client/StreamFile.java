@@ -19,7 +19,6 @@
 package com.prelert.rs.client;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
@@ -84,12 +83,11 @@ public final class StreamFile
         lastIndex = url.lastIndexOf("/data");
         String baseUrl = url.substring(0, lastIndex);
 
-        try (EngineApiClient engineApiClient = new EngineApiClient(baseUrl);
-             FileInputStream fs = new FileInputStream(new File(filename)))
+        try (EngineApiClient engineApiClient = new EngineApiClient(baseUrl))
         {
             long start = System.currentTimeMillis();
 
-            MultiDataPostResult uploaded = engineApiClient.streamingUpload(jobId, fs, compressed);
+            MultiDataPostResult uploaded = engineApiClient.fileUpload(jobId, new File(filename), compressed);
 
             if (close)
             {
@@ -0,0 +1,173 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.prelert.job.DataCounts;
+
+/**
+ * The progress of a resumable upload: how far into the data file the
+ * engine has acknowledged records and the counts of the records sent so
+ * far. Checkpoints are stored as JSON in a local file and the file is
+ * replaced atomically each time a piece of the upload is acknowledged.
+ *
+ * @see EngineApiClient#resumableUpload(String, File, com.prelert.job.DataDescription, File)
+ */
+public class UploadCheckpoint
+{
+    private String m_JobId;
+    private long m_FileLength;
+    private long m_Offset;
+    private Date m_LatestRecordTimeStamp;
+    private DataCounts m_Counts;
+
+    public UploadCheckpoint()
+    {
+        m_Counts = new DataCounts();
+    }
+
+    UploadCheckpoint(String jobId, long fileLength)
+    {
+        this();
+        m_JobId = jobId;
+        m_FileLength = fileLength;
+    }
+
+    /**
+     * @return The job the data is uploaded to
+     */
+    public String getJobId()
+    {
+        return m_JobId;
+    }
+
+    public void setJobId(String jobId)
+    {
+        m_JobId = jobId;
+    }
+
+    /**
+     * @return The length of the data file when the upload started
+     */
+    public long getFileLength()
+    {
+        return m_FileLength;
+    }
+
+    public void setFileLength(long fileLength)
+    {
+        m_FileLength = fileLength;
+    }
+
+    /**
+     * @return The offset in the data file of the first record
+     * not yet acknowledged by the engine
+     */
+    public long getOffset()
+    {
+        return m_Offset;
+    }
+
+    public void setOffset(long offset)
+    {
+        m_Offset = offset;
+    }
+
+    /**
+     * @return The time of the latest record the engine has acknowledged
+     * or null if none have been
+     */
+    public Date getLatestRecordTimeStamp()
+    {
+        return m_LatestRecordTimeStamp;
+    }
+
+    public void setLatestRecordTimeStamp(Date latestRecordTimeStamp)
+    {
+        m_LatestRecordTimeStamp = latestRecordTimeStamp;
+    }
+
+    /**
+     * @return The counts of all the acknowledged records
+     */
+    public DataCounts getCounts()
+    {
+        return m_Counts;
+    }
+
+    public void setCounts(DataCounts counts)
+    {
+        m_Counts = counts;
+    }
+
+    /**
+     * Record that the engine acknowledged the records up to
+     * <code>offset</code>.
+     *
+     * @param offset The offset just after the acknowledged records
+     * @param counts The counts the engine returned for them
+     */
+    void acknowledge(long offset, DataCounts counts)
+    {
+        m_Offset = offset;
+        m_Counts.merge(counts);
+        m_LatestRecordTimeStamp = m_Counts.getLatestRecordTimeStamp();
+    }
+
+    /**
+     * Read a checkpoint file.
+     *
+     * @param file The checkpoint file
+     * @param mapper The mapper to read the JSON with
+     * @return The checkpoint or null if the file does not exist
+     * @throws IOException If the file cannot be read
+     */
+    static UploadCheckpoint read(File file, ObjectMapper mapper) throws IOException
+    {
+        if (!file.exists())
+        {
+            return null;
+        }
+        return mapper.readValue(file, UploadCheckpoint.class);
+    }
+
+    /**
+     * Write the checkpoint to a temporary file and move it over
+     * <code>file</code> so a crash never leaves a partial checkpoint.
+     *
+     * @param file The checkpoint file
+     * @param mapper The mapper to write the JSON with
+     * @throws IOException If the file cannot be written
+     */
+    void write(File file, ObjectMapper mapper) throws IOException
+    {
+        Path target = file.toPath().toAbsolutePath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        mapper.writeValue(temp.toFile(), this);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+}
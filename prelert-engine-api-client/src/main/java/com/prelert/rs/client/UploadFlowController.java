@@ -0,0 +1,280 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import org.eclipse.jetty.util.Callback;
+
+/**
+ * Limits the number of bytes of upload data that the HTTP client has
+ * not yet sent. A streaming upload, compressed or not, reserves the bytes
+ * of each buffer before offering it to the request and the bytes are
+ * released when the buffer has been written to the connection. When the
+ * limit is reached the thread reading the input stream waits, so when
+ * the engine reads data more slowly than it can be read from the input
+ * stream the upload slows to the engine's pace instead of queueing the
+ * rest of the stream in memory.
+ * <br>
+ * One controller is shared by all the uploads of a client so the limit
+ * bounds the memory used by all of them together. A single buffer is
+ * always allowed when nothing is in flight, even if it is larger than
+ * the limit.
+ * <br>
+ * This class is thread safe.
+ */
+public class UploadFlowController
+{
+    public static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * How often a waiting reader checks that its request is still active
+     */
+    private static final long WAIT_CHECK_INTERVAL_MS = 100;
+
+    private final long m_MaxInFlightBytes;
+    private final ReentrantLock m_Lock;
+    private final Condition m_BytesReleased;
+
+    private long m_InFlightBytes;
+    private int m_InFlightBuffers;
+
+    private final AtomicLong m_BytesSent;
+    private final AtomicLong m_StallCount;
+    private final AtomicLong m_StallTimeNanos;
+    private final long m_CreatedNanos;
+
+    /**
+     * Create a controller allowing {@value #DEFAULT_MAX_IN_FLIGHT_BYTES}
+     * unsent bytes
+     */
+    public UploadFlowController()
+    {
+        this(DEFAULT_MAX_IN_FLIGHT_BYTES);
+    }
+
+    /**
+     * @param maxInFlightBytes The maximum number of bytes read from input
+     * streams but not yet sent
+     */
+    public UploadFlowController(long maxInFlightBytes)
+    {
+        if (maxInFlightBytes < 1)
+        {
+            throw new IllegalArgumentException("Max in flight bytes must be positive: "
+                    + maxInFlightBytes);
+        }
+
+        m_MaxInFlightBytes = maxInFlightBytes;
+        m_Lock = new ReentrantLock();
+        m_BytesReleased = m_Lock.newCondition();
+        m_BytesSent = new AtomicLong();
+        m_StallCount = new AtomicLong();
+        m_StallTimeNanos = new AtomicLong();
+        m_CreatedNanos = System.nanoTime();
+    }
+
+    /**
+     * Wait until <code>bytes</code> more bytes can be in flight and
+     * reserve them.
+     *
+     * @param bytes The size of the buffer about to be offered
+     * @param requestActive Stop waiting if this returns false
+     * @return True if the bytes were reserved, false if the request
+     * stopped being active while waiting
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    boolean acquire(int bytes, BooleanSupplier requestActive) throws InterruptedIOException
+    {
+        m_Lock.lock();
+        try
+        {
+            long stallStart = 0;
+            while (m_InFlightBuffers > 0 && m_InFlightBytes + bytes > m_MaxInFlightBytes)
+            {
+                if (stallStart == 0)
+                {
+                    stallStart = System.nanoTime();
+                    m_StallCount.incrementAndGet();
+                }
+                if (!requestActive.getAsBoolean())
+                {
+                    m_StallTimeNanos.addAndGet(System.nanoTime() - stallStart);
+                    return false;
+                }
+                try
+                {
+                    m_BytesReleased.await(WAIT_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    m_StallTimeNanos.addAndGet(System.nanoTime() - stallStart);
+                    throw new InterruptedIOException("Interrupted waiting to upload data");
+                }
+            }
+            if (stallStart != 0)
+            {
+                m_StallTimeNanos.addAndGet(System.nanoTime() - stallStart);
+            }
+
+            m_InFlightBytes += bytes;
+            m_InFlightBuffers++;
+            return true;
+        }
+        finally
+        {
+            m_Lock.unlock();
+        }
+    }
+
+    /**
+     * Release bytes reserved by {@link #acquire(int, BooleanSupplier)}
+     *
+     * @param bytes The size of the buffer
+     * @param sent True if the bytes were written to the connection
+     */
+    void release(int bytes, boolean sent)
+    {
+        if (sent)
+        {
+            m_BytesSent.addAndGet(bytes);
+        }
+
+        m_Lock.lock();
+        try
+        {
+            m_InFlightBytes -= bytes;
+            m_InFlightBuffers--;
+            m_BytesReleased.signalAll();
+        }
+        finally
+        {
+            m_Lock.unlock();
+        }
+    }
+
+    /**
+     * A callback for a content provider that releases <code>bytes</code>
+     * when the HTTP client has finished with the buffer and then
+     * completes <code>delegate</code>.
+     *
+     * @param bytes The size of the buffer
+     * @param delegate The buffer's own callback
+     * @return The callback
+     */
+    Callback releaseCallback(int bytes, Callback delegate)
+    {
+        return new Callback()
+        {
+            @Override
+            public void succeeded()
+            {
+                release(bytes, true);
+                delegate.succeeded();
+            }
+
+            @Override
+            public void failed(Throwable x)
+            {
+                release(bytes, false);
+                delegate.failed(x);
+            }
+        };
+    }
+
+    public long getMaxInFlightBytes()
+    {
+        return m_MaxInFlightBytes;
+    }
+
+    /**
+     * @return The number of bytes read but not yet sent
+     */
+    public long getInFlightBytes()
+    {
+        m_Lock.lock();
+        try
+        {
+            return m_InFlightBytes;
+        }
+        finally
+        {
+            m_Lock.unlock();
+        }
+    }
+
+    /**
+     * @return The number of buffers queued but not yet sent
+     */
+    public int getQueueDepth()
+    {
+        m_Lock.lock();
+        try
+        {
+            return m_InFlightBuffers;
+        }
+        finally
+        {
+            m_Lock.unlock();
+        }
+    }
+
+    /**
+     * @return The total number of bytes sent
+     */
+    public long getBytesSent()
+    {
+        return m_BytesSent.get();
+    }
+
+    /**
+     * @return The average number of bytes sent per second since
+     * the controller was created
+     */
+    public double getThroughputBytesPerSecond()
+    {
+        long elapsedNanos = System.nanoTime() - m_CreatedNanos;
+        return (elapsedNanos <= 0) ? 0.0
+                : m_BytesSent.get() * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    /**
+     * @return The number of times a reader had to wait for bytes
+     * to be sent
+     */
+    public long getStallCount()
+    {
+        return m_StallCount.get();
+    }
+
+    /**
+     * @return The total time in milliseconds readers spent waiting
+     * for bytes to be sent
+     */
+    public long getStallTimeMs()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(m_StallTimeNanos.get());
+    }
+}
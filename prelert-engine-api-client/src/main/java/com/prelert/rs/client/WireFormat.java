@@ -0,0 +1,79 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.client;
+
+import org.eclipse.jetty.http.MimeTypes;
+
+/**
+ * The encoding the client asks the Engine API to use for the documents
+ * it returns. Binary Smile documents are smaller than JSON and quicker
+ * to parse, which matters most for large pages of records and buckets.
+ * The format is negotiated with the HTTP <code>Accept</code> header
+ * and each response is decoded according to its <code>Content-Type</code>,
+ * so a server that only produces JSON still works with any setting.
+ */
+public enum WireFormat
+{
+    /**
+     * Text JSON, the default
+     */
+    JSON("application/json"),
+
+    /**
+     * Binary Smile encoded JSON, falling back to JSON
+     */
+    SMILE("application/x-jackson-smile");
+
+    private final String m_MediaType;
+
+    private WireFormat(String mediaType)
+    {
+        m_MediaType = mediaType;
+    }
+
+    public String getMediaType()
+    {
+        return m_MediaType;
+    }
+
+    /**
+     * @return The <code>Accept</code> header value preferring this
+     * format to JSON
+     */
+    String acceptHeader()
+    {
+        return (this == JSON) ? m_MediaType : m_MediaType + ", " + JSON.m_MediaType + ";q=0.9";
+    }
+
+    /**
+     * The format of a response.
+     *
+     * @param contentType The response's <code>Content-Type</code> header, may be null
+     * @return The matching format or {@link #JSON} if the type is missing or unknown
+     */
+    static WireFormat fromContentType(String contentType)
+    {
+        if (contentType == null)
+        {
+            return JSON;
+        }
+        String mediaType = MimeTypes.getContentTypeWithoutCharset(contentType).trim();
+        return SMILE.m_MediaType.equalsIgnoreCase(mediaType) ? SMILE : JSON;
+    }
+}
@@ -339,6 +339,38 @@ public class DataCounts
         m_LatestRecordTimeStamp = latestRecordTime;
     }
 
+    /**
+     * Add the counts from <code>other</code> to these counts.
+     * The latest record time becomes the later of the two times.
+     * This is used to combine the counts of several uploads to
+     * the same job into a single summary.
+     *
+     * @param other The counts to add to these
+     */
+    public void merge(DataCounts other)
+    {
+        if (other.m_BucketCount != null)
+        {
+            m_BucketCount = (m_BucketCount == null) ? other.m_BucketCount
+                    : m_BucketCount + other.m_BucketCount;
+        }
+        m_ProcessedRecordCount += other.m_ProcessedRecordCount;
+        m_ProcessedFieldCount += other.m_ProcessedFieldCount;
+        m_InputBytes += other.m_InputBytes;
+        m_InputFieldCount += other.m_InputFieldCount;
+        m_InvalidDateCount += other.m_InvalidDateCount;
+        m_MissingFieldCount += other.m_MissingFieldCount;
+        m_OutOfOrderTimeStampCount += other.m_OutOfOrderTimeStampCount;
+        m_FailedTransformCount += other.m_FailedTransformCount;
+        m_ExcludedRecordCount += other.m_ExcludedRecordCount;
+
+        if (other.m_LatestRecordTimeStamp != null && (m_LatestRecordTimeStamp == null
+                || other.m_LatestRecordTimeStamp.after(m_LatestRecordTimeStamp)))
+        {
+            m_LatestRecordTimeStamp = other.m_LatestRecordTimeStamp;
+        }
+    }
+
     public Map<String, Object> toObjectMap()
     {
         Map<String, Object> map = new HashMap<>();
@@ -26,6 +26,7 @@ import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.annotation.JsonFormat.Feature;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 /**
  * Anomaly Cause POJO.
@@ -91,9 +92,10 @@ public class AnomalyCause
         return m_ByFieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setByFieldName(String value)
     {
-        m_ByFieldName = value.intern();
+        m_ByFieldName = StringPool.shared().get(value);
     }
 
     public String getByFieldValue()
@@ -101,9 +103,10 @@ public class AnomalyCause
         return m_ByFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setByFieldValue(String value)
     {
-        m_ByFieldValue = value.intern();
+        m_ByFieldValue = StringPool.shared().get(value);
     }
 
     public String getCorrelatedByFieldValue()
@@ -111,9 +114,10 @@ public class AnomalyCause
         return m_CorrelatedByFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setCorrelatedByFieldValue(String value)
     {
-        m_CorrelatedByFieldValue = value.intern();
+        m_CorrelatedByFieldValue = StringPool.shared().get(value);
     }
 
     public String getPartitionFieldName()
@@ -121,9 +125,10 @@ public class AnomalyCause
         return m_PartitionFieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setPartitionFieldName(String field)
     {
-        m_PartitionFieldName = field.intern();
+        m_PartitionFieldName = StringPool.shared().get(field);
     }
 
     public String getPartitionFieldValue()
@@ -131,9 +136,10 @@ public class AnomalyCause
         return m_PartitionFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setPartitionFieldValue(String value)
     {
-        m_PartitionFieldValue = value.intern();
+        m_PartitionFieldValue = StringPool.shared().get(value);
     }
 
     public String getFunction()
@@ -141,9 +147,10 @@ public class AnomalyCause
         return m_Function;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setFunction(String name)
     {
-        m_Function = name.intern();
+        m_Function = StringPool.shared().get(name);
     }
 
     public String getFunctionDescription()
@@ -151,9 +158,10 @@ public class AnomalyCause
         return m_FunctionDescription;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setFunctionDescription(String functionDescription)
     {
-        m_FunctionDescription = functionDescription.intern();
+        m_FunctionDescription = StringPool.shared().get(functionDescription);
     }
 
     @JsonFormat(with = Feature.WRITE_SINGLE_ELEM_ARRAYS_UNWRAPPED)
@@ -183,9 +191,10 @@ public class AnomalyCause
         return m_FieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setFieldName(String field)
     {
-        m_FieldName = field.intern();
+        m_FieldName = StringPool.shared().get(field);
     }
 
     public String getOverFieldName()
@@ -193,9 +202,10 @@ public class AnomalyCause
         return m_OverFieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setOverFieldName(String name)
     {
-        m_OverFieldName = name.intern();
+        m_OverFieldName = StringPool.shared().get(name);
     }
 
     public String getOverFieldValue()
@@ -203,9 +213,10 @@ public class AnomalyCause
         return m_OverFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setOverFieldValue(String value)
     {
-        m_OverFieldValue = value.intern();
+        m_OverFieldValue = StringPool.shared().get(value);
     }
 
     public List<Influence> getInfluencers()
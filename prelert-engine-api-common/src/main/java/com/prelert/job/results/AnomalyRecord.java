@@ -30,6 +30,7 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 /**
  * Anomaly Record POJO.
@@ -213,9 +214,10 @@ public class AnomalyRecord
         return m_ByFieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setByFieldName(String value)
     {
-        m_ByFieldName = value.intern();
+        m_ByFieldName = StringPool.shared().get(value);
     }
 
     public String getByFieldValue()
@@ -223,9 +225,10 @@ public class AnomalyRecord
         return m_ByFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setByFieldValue(String value)
     {
-        m_ByFieldValue = value.intern();
+        m_ByFieldValue = StringPool.shared().get(value);
     }
 
     public String getCorrelatedByFieldValue()
@@ -233,9 +236,10 @@ public class AnomalyRecord
         return m_CorrelatedByFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setCorrelatedByFieldValue(String value)
     {
-        m_CorrelatedByFieldValue = value.intern();
+        m_CorrelatedByFieldValue = StringPool.shared().get(value);
     }
 
     public String getPartitionFieldName()
@@ -243,9 +247,10 @@ public class AnomalyRecord
         return m_PartitionFieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setPartitionFieldName(String field)
     {
-        m_PartitionFieldName = field.intern();
+        m_PartitionFieldName = StringPool.shared().get(field);
     }
 
     public String getPartitionFieldValue()
@@ -253,9 +258,10 @@ public class AnomalyRecord
         return m_PartitionFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setPartitionFieldValue(String value)
     {
-        m_PartitionFieldValue = value.intern();
+        m_PartitionFieldValue = StringPool.shared().get(value);
     }
 
     public String getFunction()
@@ -263,9 +269,10 @@ public class AnomalyRecord
         return m_Function;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setFunction(String name)
     {
-        m_Function = name.intern();
+        m_Function = StringPool.shared().get(name);
     }
 
     public String getFunctionDescription()
@@ -273,9 +280,10 @@ public class AnomalyRecord
         return m_FunctionDescription;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setFunctionDescription(String functionDescription)
     {
-        m_FunctionDescription = functionDescription.intern();
+        m_FunctionDescription = StringPool.shared().get(functionDescription);
     }
 
     @JsonFormat(with = Feature.WRITE_SINGLE_ELEM_ARRAYS_UNWRAPPED)
@@ -317,9 +325,10 @@ public class AnomalyRecord
         return m_FieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setFieldName(String field)
     {
-        m_FieldName = field.intern();
+        m_FieldName = StringPool.shared().get(field);
     }
 
     public String getOverFieldName()
@@ -327,9 +336,10 @@ public class AnomalyRecord
         return m_OverFieldName;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setOverFieldName(String name)
     {
-        m_OverFieldName = name.intern();
+        m_OverFieldName = StringPool.shared().get(name);
     }
 
     public String getOverFieldValue()
@@ -337,9 +347,10 @@ public class AnomalyRecord
         return m_OverFieldValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setOverFieldValue(String value)
     {
-        m_OverFieldValue = value.intern();
+        m_OverFieldValue = StringPool.shared().get(value);
     }
 
     public List<AnomalyCause> getCauses()
@@ -368,7 +379,7 @@ public class AnomalyRecord
 
     public void setParent(String parent)
     {
-        m_Parent = parent.intern();
+        m_Parent = StringPool.shared().get(parent);
     }
 
     public List<Influence> getInfluencers()
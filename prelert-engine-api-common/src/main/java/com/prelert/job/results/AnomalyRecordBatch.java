@@ -0,0 +1,940 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+
+package com.prelert.job.results;
+
+import java.io.IOException;
+import java.net.URI;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+
+/**
+ * A page of anomaly records held column by column rather than as a
+ * list of {@link AnomalyRecord} objects.
+ * <br>
+ * Scores, probabilities, timestamps and bucket spans are primitive
+ * arrays. The string fields are dictionary encoded: each distinct string
+ * in the page is stored once and every row holds an <code>int</code>
+ * code into the dictionary, so the field names and function names
+ * repeated in every record cost 4 bytes each. Actual and typical values
+ * are flattened into one <code>double</code> array per column with an
+ * offset per row, and influencers are flattened the same way.
+ * <br>
+ * The batch is read straight from the JSON (or Smile) page returned by
+ * the records endpoint without creating the record objects:
+ * <pre>
+ * AnomalyRecordBatch batch = mapper.readValue(in, AnomalyRecordBatch.class);
+ * </pre>
+ * Either a page object with a <code>documents</code> array or a bare
+ * array of records can be read. Record causes are not kept; use
+ * {@link AnomalyRecord} pages if they are needed. Empty actual, typical
+ * and influencer lists are indistinguishable from missing ones and
+ * {@link #toRecord(int)} returns them as <code>null</code>.
+ * <br>
+ * Instances are immutable once read and safe to share between threads.
+ */
+@JsonDeserialize(using = AnomalyRecordBatch.Deserializer.class)
+public final class AnomalyRecordBatch
+{
+    /**
+     * The dictionary encoded string fields of a record
+     */
+    public enum StringColumn
+    {
+        BY_FIELD_NAME(AnomalyRecord.BY_FIELD_NAME),
+        BY_FIELD_VALUE(AnomalyRecord.BY_FIELD_VALUE),
+        CORRELATED_BY_FIELD_VALUE(AnomalyRecord.CORRELATED_BY_FIELD_VALUE),
+        PARTITION_FIELD_NAME(AnomalyRecord.PARTITION_FIELD_NAME),
+        PARTITION_FIELD_VALUE(AnomalyRecord.PARTITION_FIELD_VALUE),
+        FUNCTION(AnomalyRecord.FUNCTION),
+        FUNCTION_DESCRIPTION(AnomalyRecord.FUNCTION_DESCRIPTION),
+        FIELD_NAME(AnomalyRecord.FIELD_NAME),
+        OVER_FIELD_NAME(AnomalyRecord.OVER_FIELD_NAME),
+        OVER_FIELD_VALUE(AnomalyRecord.OVER_FIELD_VALUE);
+
+        private final String m_JsonName;
+
+        private StringColumn(String jsonName)
+        {
+            m_JsonName = jsonName;
+        }
+
+        /**
+         * @return The name of the field in the record JSON
+         */
+        public String getJsonName()
+        {
+            return m_JsonName;
+        }
+    }
+
+    /**
+     * The dictionary code of a <code>null</code> string
+     */
+    public static final int NULL_CODE = -1;
+
+    /**
+     * The timestamp of a record that has none
+     */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final String HIT_COUNT = "hitCount";
+    private static final String SKIP = "skip";
+    private static final String TAKE = "take";
+    private static final String NEXT_PAGE = "nextPage";
+    private static final String PREVIOUS_PAGE = "previousPage";
+    private static final String DOCUMENTS = "documents";
+
+    private static final Map<String, StringColumn> STRING_COLUMNS_BY_NAME = new HashMap<>();
+    static
+    {
+        for (StringColumn column : StringColumn.values())
+        {
+            STRING_COLUMNS_BY_NAME.put(column.getJsonName(), column);
+        }
+    }
+
+    private final int m_Size;
+    private final long m_HitCount;
+    private final int m_Skip;
+    private final int m_Take;
+    private final URI m_NextPage;
+    private final URI m_PreviousPage;
+
+    private final List<String> m_Dictionary;
+
+    private final long[] m_Timestamps;
+    private final long[] m_BucketSpans;
+    private final int[] m_DetectorIndexes;
+    private final double[] m_Probabilities;
+    private final double[] m_AnomalyScores;
+    private final double[] m_NormalizedProbabilities;
+    private final double[] m_InitialNormalizedProbabilities;
+    private final BitSet m_Interim;
+    private final int[][] m_StringCodes;
+
+    private final int[] m_ActualOffsets;
+    private final double[] m_ActualValues;
+    private final int[] m_TypicalOffsets;
+    private final double[] m_TypicalValues;
+
+    private final int[] m_InfluenceOffsets;
+    private final int[] m_InfluenceFieldNames;
+    private final int[] m_InfluenceValueOffsets;
+    private final int[] m_InfluenceFieldValues;
+
+    private AnomalyRecordBatch(Builder builder)
+    {
+        int size = builder.m_Size;
+        m_Size = size;
+        m_HitCount = builder.m_HitCount;
+        m_Skip = builder.m_Skip;
+        m_Take = builder.m_Take;
+        m_NextPage = builder.m_NextPage;
+        m_PreviousPage = builder.m_PreviousPage;
+
+        m_Dictionary = Collections.unmodifiableList(new ArrayList<>(builder.m_Dictionary));
+
+        m_Timestamps = Arrays.copyOf(builder.m_Timestamps, size);
+        m_BucketSpans = Arrays.copyOf(builder.m_BucketSpans, size);
+        m_DetectorIndexes = Arrays.copyOf(builder.m_DetectorIndexes, size);
+        m_Probabilities = Arrays.copyOf(builder.m_Probabilities, size);
+        m_AnomalyScores = Arrays.copyOf(builder.m_AnomalyScores, size);
+        m_NormalizedProbabilities = Arrays.copyOf(builder.m_NormalizedProbabilities, size);
+        m_InitialNormalizedProbabilities = Arrays.copyOf(builder.m_InitialNormalizedProbabilities, size);
+        m_Interim = (BitSet) builder.m_Interim.clone();
+        m_StringCodes = new int[builder.m_StringCodes.length][];
+        for (int i = 0; i < m_StringCodes.length; i++)
+        {
+            m_StringCodes[i] = Arrays.copyOf(builder.m_StringCodes[i], size);
+        }
+
+        m_ActualOffsets = Arrays.copyOf(builder.m_ActualOffsets, size + 1);
+        m_ActualValues = Arrays.copyOf(builder.m_ActualValues, m_ActualOffsets[size]);
+        m_TypicalOffsets = Arrays.copyOf(builder.m_TypicalOffsets, size + 1);
+        m_TypicalValues = Arrays.copyOf(builder.m_TypicalValues, m_TypicalOffsets[size]);
+
+        m_InfluenceOffsets = Arrays.copyOf(builder.m_InfluenceOffsets, size + 1);
+        int influences = m_InfluenceOffsets[size];
+        m_InfluenceFieldNames = Arrays.copyOf(builder.m_InfluenceFieldNames, influences);
+        m_InfluenceValueOffsets = Arrays.copyOf(builder.m_InfluenceValueOffsets, influences + 1);
+        m_InfluenceFieldValues = Arrays.copyOf(builder.m_InfluenceFieldValues,
+                m_InfluenceValueOffsets[influences]);
+    }
+
+    /**
+     * Convert a list of records to a batch
+     *
+     * @param records The records
+     * @return A new batch holding the records in the same order
+     */
+    public static AnomalyRecordBatch of(List<AnomalyRecord> records)
+    {
+        Builder builder = new Builder();
+        for (AnomalyRecord record : records)
+        {
+            builder.add(record);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Read a batch from a parser positioned at, or just before, either a
+     * page object or an array of records. On return the parser is at the
+     * end of the page or array.
+     *
+     * @param parser The JSON parser
+     * @return The batch
+     * @throws IOException If the content cannot be read or is not a
+     * page of records
+     */
+    public static AnomalyRecordBatch read(JsonParser parser) throws IOException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (token == null)
+        {
+            token = parser.nextToken();
+        }
+
+        Builder builder = new Builder();
+        if (token == JsonToken.START_ARRAY)
+        {
+            readRecords(parser, builder);
+        }
+        else if (token == JsonToken.START_OBJECT)
+        {
+            readPage(parser, builder);
+        }
+        else
+        {
+            throw new JsonMappingException("Expected a page of records but found " + token,
+                    parser.getCurrentLocation());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return The number of records in the batch
+     */
+    public int size()
+    {
+        return m_Size;
+    }
+
+    /**
+     * @return The total number of records matching the query, of which
+     * this batch is one page
+     */
+    public long getHitCount()
+    {
+        return m_HitCount;
+    }
+
+    public int getSkip()
+    {
+        return m_Skip;
+    }
+
+    public int getTake()
+    {
+        return m_Take;
+    }
+
+    /**
+     * @return The link to the next page or <code>null</code>
+     */
+    public URI getNextPage()
+    {
+        return m_NextPage;
+    }
+
+    /**
+     * @return The link to the previous page or <code>null</code>
+     */
+    public URI getPreviousPage()
+    {
+        return m_PreviousPage;
+    }
+
+    /**
+     * The distinct strings of the batch, indexed by code
+     *
+     * @return An unmodifiable list
+     */
+    public List<String> getDictionary()
+    {
+        return m_Dictionary;
+    }
+
+    /**
+     * @param row The record index
+     * @return The epoch time in milliseconds or {@link #NO_TIMESTAMP}
+     */
+    public long getTimestamp(int row)
+    {
+        return m_Timestamps[checkRow(row)];
+    }
+
+    /**
+     * @param row The record index
+     * @return The bucket span in seconds
+     */
+    public long getBucketSpan(int row)
+    {
+        return m_BucketSpans[checkRow(row)];
+    }
+
+    public int getDetectorIndex(int row)
+    {
+        return m_DetectorIndexes[checkRow(row)];
+    }
+
+    public double getProbability(int row)
+    {
+        return m_Probabilities[checkRow(row)];
+    }
+
+    public double getAnomalyScore(int row)
+    {
+        return m_AnomalyScores[checkRow(row)];
+    }
+
+    public double getNormalizedProbability(int row)
+    {
+        return m_NormalizedProbabilities[checkRow(row)];
+    }
+
+    public double getInitialNormalizedProbability(int row)
+    {
+        return m_InitialNormalizedProbabilities[checkRow(row)];
+    }
+
+    public boolean isInterim(int row)
+    {
+        return m_Interim.get(checkRow(row));
+    }
+
+    /**
+     * The dictionary code of a string field. Records with equal codes
+     * have equal values so grouping can be done on the codes alone.
+     *
+     * @param column The string field
+     * @param row The record index
+     * @return The index into {@link #getDictionary()} or {@link #NULL_CODE}
+     */
+    public int getCode(StringColumn column, int row)
+    {
+        return m_StringCodes[column.ordinal()][checkRow(row)];
+    }
+
+    /**
+     * @param column The string field
+     * @param row The record index
+     * @return The value of the field, possibly <code>null</code>
+     */
+    public String getString(StringColumn column, int row)
+    {
+        return decode(getCode(column, row));
+    }
+
+    /**
+     * @param row The record index
+     * @return A copy of the actual values or <code>null</code> if there are none
+     */
+    public double[] getActual(int row)
+    {
+        checkRow(row);
+        return slice(m_ActualValues, m_ActualOffsets[row], m_ActualOffsets[row + 1]);
+    }
+
+    /**
+     * @param row The record index
+     * @return A copy of the typical values or <code>null</code> if there are none
+     */
+    public double[] getTypical(int row)
+    {
+        checkRow(row);
+        return slice(m_TypicalValues, m_TypicalOffsets[row], m_TypicalOffsets[row + 1]);
+    }
+
+    /**
+     * @param row The record index
+     * @return New influence objects or <code>null</code> if there are none
+     */
+    public List<Influence> getInfluencers(int row)
+    {
+        checkRow(row);
+        int start = m_InfluenceOffsets[row];
+        int end = m_InfluenceOffsets[row + 1];
+        if (start == end)
+        {
+            return null;
+        }
+
+        List<Influence> influencers = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++)
+        {
+            Influence influence = new Influence(decode(m_InfluenceFieldNames[i]));
+            List<String> values = new ArrayList<>();
+            for (int v = m_InfluenceValueOffsets[i]; v < m_InfluenceValueOffsets[i + 1]; v++)
+            {
+                values.add(decode(m_InfluenceFieldValues[v]));
+            }
+            influence.setInfluencerFieldValues(values);
+            influencers.add(influence);
+        }
+        return influencers;
+    }
+
+    /**
+     * Create the record object for one row. The record has no causes.
+     *
+     * @param row The record index
+     * @return A new record
+     */
+    public AnomalyRecord toRecord(int row)
+    {
+        AnomalyRecord record = new AnomalyRecord();
+        long timestamp = getTimestamp(row);
+        if (timestamp != NO_TIMESTAMP)
+        {
+            record.setTimestamp(new Date(timestamp));
+        }
+        record.setBucketSpan(m_BucketSpans[row]);
+        record.setDetectorIndex(m_DetectorIndexes[row]);
+        record.setProbability(m_Probabilities[row]);
+        record.setAnomalyScore(m_AnomalyScores[row]);
+        record.setNormalizedProbability(m_NormalizedProbabilities[row]);
+        record.setInitialNormalizedProbability(m_InitialNormalizedProbabilities[row]);
+        record.setInterim(m_Interim.get(row));
+        record.setByFieldName(getString(StringColumn.BY_FIELD_NAME, row));
+        record.setByFieldValue(getString(StringColumn.BY_FIELD_VALUE, row));
+        record.setCorrelatedByFieldValue(getString(StringColumn.CORRELATED_BY_FIELD_VALUE, row));
+        record.setPartitionFieldName(getString(StringColumn.PARTITION_FIELD_NAME, row));
+        record.setPartitionFieldValue(getString(StringColumn.PARTITION_FIELD_VALUE, row));
+        record.setFunction(getString(StringColumn.FUNCTION, row));
+        record.setFunctionDescription(getString(StringColumn.FUNCTION_DESCRIPTION, row));
+        record.setFieldName(getString(StringColumn.FIELD_NAME, row));
+        record.setOverFieldName(getString(StringColumn.OVER_FIELD_NAME, row));
+        record.setOverFieldValue(getString(StringColumn.OVER_FIELD_VALUE, row));
+        record.setActual(getActual(row));
+        record.setTypical(getTypical(row));
+        record.setInfluencers(getInfluencers(row));
+        return record;
+    }
+
+    /**
+     * @return New record objects for every row
+     * @see #toRecord(int)
+     */
+    public List<AnomalyRecord> toRecords()
+    {
+        List<AnomalyRecord> records = new ArrayList<>(m_Size);
+        for (int i = 0; i < m_Size; i++)
+        {
+            records.add(toRecord(i));
+        }
+        return records;
+    }
+
+    private int checkRow(int row)
+    {
+        if (row < 0 || row >= m_Size)
+        {
+            throw new IndexOutOfBoundsException("Row " + row + " of a batch of " + m_Size);
+        }
+        return row;
+    }
+
+    private String decode(int code)
+    {
+        return (code == NULL_CODE) ? null : m_Dictionary.get(code);
+    }
+
+    private static double[] slice(double[] values, int start, int end)
+    {
+        return (start == end) ? null : Arrays.copyOfRange(values, start, end);
+    }
+
+    private static void readPage(JsonParser parser, Builder builder) throws IOException
+    {
+        while (parser.nextToken() == JsonToken.FIELD_NAME)
+        {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.VALUE_NULL)
+            {
+                continue;
+            }
+
+            switch (field)
+            {
+                case HIT_COUNT:
+                    builder.m_HitCount = parser.getValueAsLong();
+                    break;
+                case SKIP:
+                    builder.m_Skip = parser.getValueAsInt();
+                    break;
+                case TAKE:
+                    builder.m_Take = parser.getValueAsInt();
+                    break;
+                case NEXT_PAGE:
+                    builder.m_NextPage = URI.create(parser.getText());
+                    break;
+                case PREVIOUS_PAGE:
+                    builder.m_PreviousPage = URI.create(parser.getText());
+                    break;
+                case DOCUMENTS:
+                    readRecords(parser, builder);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+    }
+
+    private static void readRecords(JsonParser parser, Builder builder) throws IOException
+    {
+        expect(parser, JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT)
+        {
+            builder.startRow();
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                readField(parser, builder, field);
+            }
+        }
+        expect(parser, JsonToken.END_ARRAY);
+    }
+
+    private static void readField(JsonParser parser, Builder builder, String field)
+    throws IOException
+    {
+        int row = builder.m_Size - 1;
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL)
+        {
+            return;
+        }
+
+        StringColumn column = STRING_COLUMNS_BY_NAME.get(field);
+        if (column != null)
+        {
+            builder.m_StringCodes[column.ordinal()][row] =
+                    builder.encode(StringPool.shared().get(parser));
+            return;
+        }
+
+        switch (field)
+        {
+            case AnomalyRecord.TIMESTAMP:
+                builder.m_Timestamps[row] = readTimestamp(parser);
+                break;
+            case AnomalyRecord.BUCKET_SPAN:
+                builder.m_BucketSpans[row] = parser.getValueAsLong();
+                break;
+            case AnomalyRecord.DETECTOR_INDEX:
+                builder.m_DetectorIndexes[row] = parser.getValueAsInt();
+                break;
+            case AnomalyRecord.PROBABILITY:
+                builder.m_Probabilities[row] = parser.getValueAsDouble();
+                break;
+            case AnomalyRecord.ANOMALY_SCORE:
+                builder.m_AnomalyScores[row] = parser.getValueAsDouble();
+                break;
+            case AnomalyRecord.NORMALIZED_PROBABILITY:
+                builder.m_NormalizedProbabilities[row] = parser.getValueAsDouble();
+                break;
+            case AnomalyRecord.INITIAL_NORMALIZED_PROBABILITY:
+                builder.m_InitialNormalizedProbabilities[row] = parser.getValueAsDouble();
+                break;
+            case AnomalyRecord.IS_INTERIM:
+                builder.m_Interim.set(row, parser.getValueAsBoolean());
+                break;
+            case AnomalyRecord.ACTUAL:
+                readValues(parser, builder.m_Actual);
+                break;
+            case AnomalyRecord.TYPICAL:
+                readValues(parser, builder.m_Typical);
+                break;
+            case AnomalyRecord.INFLUENCERS:
+                readInfluencers(parser, builder);
+                break;
+            default:
+                // causes and anything the batch does not hold
+                parser.skipChildren();
+                break;
+        }
+    }
+
+    /**
+     * Dates are written as epoch milliseconds unless the mapper that
+     * wrote them was configured for ISO 8601 strings
+     */
+    private static long readTimestamp(JsonParser parser) throws IOException
+    {
+        if (parser.getCurrentToken() == JsonToken.VALUE_STRING)
+        {
+            try
+            {
+                return new StdDateFormat().parse(parser.getText()).getTime();
+            }
+            catch (ParseException e)
+            {
+                throw new JsonMappingException("Invalid timestamp " + parser.getText(),
+                        parser.getCurrentLocation(), e);
+            }
+        }
+        return parser.getValueAsLong();
+    }
+
+    /**
+     * Single values are written unwrapped so accept a number or an array
+     */
+    private static void readValues(JsonParser parser, DoubleColumn column) throws IOException
+    {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY)
+        {
+            column.add(parser.getValueAsDouble());
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY)
+        {
+            column.add(parser.getValueAsDouble());
+        }
+    }
+
+    private static void readInfluencers(JsonParser parser, Builder builder) throws IOException
+    {
+        expect(parser, JsonToken.START_ARRAY);
+        while (parser.nextToken() == JsonToken.START_OBJECT)
+        {
+            int fieldName = NULL_CODE;
+            builder.startInfluence();
+            while (parser.nextToken() == JsonToken.FIELD_NAME)
+            {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if (Influence.INFLUENCER_FIELD_NAME.equals(field) && token != JsonToken.VALUE_NULL)
+                {
+                    fieldName = builder.encode(StringPool.shared().get(parser));
+                }
+                else if (Influence.INFLUENCER_FIELD_VALUES.equals(field)
+                        && token == JsonToken.START_ARRAY)
+                {
+                    while (parser.nextToken() != JsonToken.END_ARRAY)
+                    {
+                        builder.addInfluenceValue(parser.getCurrentToken() == JsonToken.VALUE_NULL
+                                ? NULL_CODE : builder.encode(StringPool.shared().get(parser)));
+                    }
+                }
+                else
+                {
+                    parser.skipChildren();
+                }
+            }
+            builder.endInfluence(fieldName);
+        }
+        expect(parser, JsonToken.END_ARRAY);
+    }
+
+    private static void expect(JsonParser parser, JsonToken expected) throws IOException
+    {
+        if (parser.getCurrentToken() != expected)
+        {
+            throw new JsonMappingException("Expected " + expected + " in a page of records but found "
+                    + parser.getCurrentToken(), parser.getCurrentLocation());
+        }
+    }
+
+    private static int grow(int capacity, int needed)
+    {
+        return Math.max(needed, capacity + (capacity >> 1) + 16);
+    }
+
+    /**
+     * Flattened variable length <code>double</code> values with a start
+     * offset per row
+     */
+    private static class DoubleColumn
+    {
+        private int[] m_Offsets = new int[] {0};
+        private double[] m_Values = new double[0];
+        private int m_Count;
+
+        void add(double value)
+        {
+            if (m_Count == m_Values.length)
+            {
+                m_Values = Arrays.copyOf(m_Values, grow(m_Values.length, m_Count + 1));
+            }
+            m_Values[m_Count++] = value;
+        }
+
+        void endRow(int row)
+        {
+            if (row + 1 >= m_Offsets.length)
+            {
+                m_Offsets = Arrays.copyOf(m_Offsets, grow(m_Offsets.length, row + 2));
+            }
+            m_Offsets[row + 1] = m_Count;
+        }
+    }
+
+    /**
+     * Accumulates the columns in growable arrays. Each row's variable
+     * length columns are closed when the next row starts or when the
+     * batch is built.
+     */
+    private static class Builder
+    {
+        private long m_HitCount;
+        private int m_Skip;
+        private int m_Take;
+        private URI m_NextPage;
+        private URI m_PreviousPage;
+
+        private final List<String> m_Dictionary = new ArrayList<>();
+        private final Map<String, Integer> m_Codes = new HashMap<>();
+
+        private int m_Size;
+        private long[] m_Timestamps = new long[0];
+        private long[] m_BucketSpans = new long[0];
+        private int[] m_DetectorIndexes = new int[0];
+        private double[] m_Probabilities = new double[0];
+        private double[] m_AnomalyScores = new double[0];
+        private double[] m_NormalizedProbabilities = new double[0];
+        private double[] m_InitialNormalizedProbabilities = new double[0];
+        private final BitSet m_Interim = new BitSet();
+        private final int[][] m_StringCodes = new int[StringColumn.values().length][0];
+
+        private final DoubleColumn m_Actual = new DoubleColumn();
+        private final DoubleColumn m_Typical = new DoubleColumn();
+        private int[] m_ActualOffsets;
+        private double[] m_ActualValues;
+        private int[] m_TypicalOffsets;
+        private double[] m_TypicalValues;
+
+        private int[] m_InfluenceOffsets = new int[] {0};
+        private int m_InfluenceCount;
+        private int[] m_InfluenceFieldNames = new int[0];
+        private int[] m_InfluenceValueOffsets = new int[] {0};
+        private int m_InfluenceValueCount;
+        private int[] m_InfluenceFieldValues = new int[0];
+
+        int encode(String value)
+        {
+            Integer code = m_Codes.get(value);
+            if (code == null)
+            {
+                code = m_Dictionary.size();
+                m_Dictionary.add(value);
+                m_Codes.put(value, code);
+            }
+            return code;
+        }
+
+        int encodeNullable(String value)
+        {
+            return (value == null) ? NULL_CODE : encode(value);
+        }
+
+        void startRow()
+        {
+            if (m_Size > 0)
+            {
+                endRow();
+            }
+
+            int row = m_Size++;
+            if (row == m_Timestamps.length)
+            {
+                int capacity = grow(row, row + 1);
+                m_Timestamps = Arrays.copyOf(m_Timestamps, capacity);
+                m_BucketSpans = Arrays.copyOf(m_BucketSpans, capacity);
+                m_DetectorIndexes = Arrays.copyOf(m_DetectorIndexes, capacity);
+                m_Probabilities = Arrays.copyOf(m_Probabilities, capacity);
+                m_AnomalyScores = Arrays.copyOf(m_AnomalyScores, capacity);
+                m_NormalizedProbabilities = Arrays.copyOf(m_NormalizedProbabilities, capacity);
+                m_InitialNormalizedProbabilities = Arrays.copyOf(m_InitialNormalizedProbabilities,
+                        capacity);
+                for (int i = 0; i < m_StringCodes.length; i++)
+                {
+                    m_StringCodes[i] = Arrays.copyOf(m_StringCodes[i], capacity);
+                }
+            }
+
+            m_Timestamps[row] = NO_TIMESTAMP;
+            m_BucketSpans[row] = 0;
+            m_DetectorIndexes[row] = 0;
+            m_Probabilities[row] = 0.0;
+            m_AnomalyScores[row] = 0.0;
+            m_NormalizedProbabilities[row] = 0.0;
+            m_InitialNormalizedProbabilities[row] = 0.0;
+            for (int[] codes : m_StringCodes)
+            {
+                codes[row] = NULL_CODE;
+            }
+        }
+
+        private void endRow()
+        {
+            int row = m_Size - 1;
+            m_Actual.endRow(row);
+            m_Typical.endRow(row);
+            if (row + 1 >= m_InfluenceOffsets.length)
+            {
+                m_InfluenceOffsets = Arrays.copyOf(m_InfluenceOffsets,
+                        grow(m_InfluenceOffsets.length, row + 2));
+            }
+            m_InfluenceOffsets[row + 1] = m_InfluenceCount;
+        }
+
+        void startInfluence()
+        {
+            if (m_InfluenceCount == m_InfluenceFieldNames.length)
+            {
+                int capacity = grow(m_InfluenceCount, m_InfluenceCount + 1);
+                m_InfluenceFieldNames = Arrays.copyOf(m_InfluenceFieldNames, capacity);
+                m_InfluenceValueOffsets = Arrays.copyOf(m_InfluenceValueOffsets, capacity + 1);
+            }
+        }
+
+        void addInfluenceValue(int code)
+        {
+            if (m_InfluenceValueCount == m_InfluenceFieldValues.length)
+            {
+                m_InfluenceFieldValues = Arrays.copyOf(m_InfluenceFieldValues,
+                        grow(m_InfluenceValueCount, m_InfluenceValueCount + 1));
+            }
+            m_InfluenceFieldValues[m_InfluenceValueCount++] = code;
+        }
+
+        void endInfluence(int fieldName)
+        {
+            m_InfluenceFieldNames[m_InfluenceCount++] = fieldName;
+            m_InfluenceValueOffsets[m_InfluenceCount] = m_InfluenceValueCount;
+        }
+
+        void add(AnomalyRecord record)
+        {
+            startRow();
+            int row = m_Size - 1;
+            Date timestamp = record.getTimestamp();
+            m_Timestamps[row] = (timestamp == null) ? NO_TIMESTAMP : timestamp.getTime();
+            m_BucketSpans[row] = record.getBucketSpan();
+            m_DetectorIndexes[row] = record.getDetectorIndex();
+            m_Probabilities[row] = record.getProbability();
+            m_AnomalyScores[row] = record.getAnomalyScore();
+            m_NormalizedProbabilities[row] = record.getNormalizedProbability();
+            m_InitialNormalizedProbabilities[row] = record.getInitialNormalizedProbability();
+            m_Interim.set(row, record.isInterim());
+
+            setString(StringColumn.BY_FIELD_NAME, row, record.getByFieldName());
+            setString(StringColumn.BY_FIELD_VALUE, row, record.getByFieldValue());
+            setString(StringColumn.CORRELATED_BY_FIELD_VALUE, row, record.getCorrelatedByFieldValue());
+            setString(StringColumn.PARTITION_FIELD_NAME, row, record.getPartitionFieldName());
+            setString(StringColumn.PARTITION_FIELD_VALUE, row, record.getPartitionFieldValue());
+            setString(StringColumn.FUNCTION, row, record.getFunction());
+            setString(StringColumn.FUNCTION_DESCRIPTION, row, record.getFunctionDescription());
+            setString(StringColumn.FIELD_NAME, row, record.getFieldName());
+            setString(StringColumn.OVER_FIELD_NAME, row, record.getOverFieldName());
+            setString(StringColumn.OVER_FIELD_VALUE, row, record.getOverFieldValue());
+
+            addValues(m_Actual, record.getActual());
+            addValues(m_Typical, record.getTypical());
+
+            if (record.getInfluencers() != null)
+            {
+                for (Influence influence : record.getInfluencers())
+                {
+                    startInfluence();
+                    if (influence.getInfluencerFieldValues() != null)
+                    {
+                        for (String value : influence.getInfluencerFieldValues())
+                        {
+                            addInfluenceValue(encodeNullable(value));
+                        }
+                    }
+                    endInfluence(encodeNullable(influence.getInfluencerFieldName()));
+                }
+            }
+        }
+
+        private void setString(StringColumn column, int row, String value)
+        {
+            m_StringCodes[column.ordinal()][row] = encodeNullable(value);
+        }
+
+        private static void addValues(DoubleColumn column, double[] values)
+        {
+            if (values != null)
+            {
+                for (double value : values)
+                {
+                    column.add(value);
+                }
+            }
+        }
+
+        AnomalyRecordBatch build()
+        {
+            if (m_Size > 0)
+            {
+                endRow();
+            }
+            m_ActualOffsets = m_Actual.m_Offsets;
+            m_ActualValues = m_Actual.m_Values;
+            m_TypicalOffsets = m_Typical.m_Offsets;
+            m_TypicalValues = m_Typical.m_Values;
+            return new AnomalyRecordBatch(this);
+        }
+    }
+
+    /**
+     * Lets an <code>ObjectMapper</code> read a batch, in any format it
+     * has a parser for
+     */
+    static class Deserializer extends JsonDeserializer<AnomalyRecordBatch>
+    {
+        @Override
+        public AnomalyRecordBatch deserialize(JsonParser parser, DeserializationContext context)
+        throws IOException
+        {
+            return read(parser);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
 /**
  * Influence field name and list of influence field values/score pairs
  */
@@ -52,9 +54,10 @@ public class Influence
         return m_Field;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setInfluencerFieldName(String field)
     {
-        this.m_Field = field;
+        this.m_Field = StringPool.shared().get(field);
     }
 
     public List<String> getInfluencerFieldValues()
@@ -62,6 +65,7 @@ public class Influence
         return m_FieldValues;
     }
 
+    @JsonDeserialize(contentUsing = PooledStringDeserializer.class)
     public void setInfluencerFieldValues(List<String> values)
     {
         this.m_FieldValues = values;
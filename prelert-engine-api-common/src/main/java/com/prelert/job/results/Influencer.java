@@ -23,6 +23,7 @@ import java.util.Objects;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 @JsonIgnoreProperties(value={"initialAnomalyScore"}, allowSetters=true)
 public class Influencer
@@ -106,9 +107,10 @@ public class Influencer
         return m_InfluenceField;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setInfluencerFieldName(String fieldName)
     {
-        m_InfluenceField = fieldName;
+        m_InfluenceField = StringPool.shared().get(fieldName);
     }
 
 
@@ -117,9 +119,10 @@ public class Influencer
         return m_InfluenceValue;
     }
 
+    @JsonDeserialize(using = PooledStringDeserializer.class)
     public void setInfluencerFieldValue(String fieldValue)
     {
-        m_InfluenceValue = fieldValue;
+        m_InfluenceValue = StringPool.shared().get(fieldValue);
     }
 
     public double getInitialAnomalyScore()
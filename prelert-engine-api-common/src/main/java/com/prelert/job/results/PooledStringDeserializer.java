@@ -0,0 +1,60 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+
+package com.prelert.job.results;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StringDeserializer;
+
+/**
+ * Deserialises a string property to its canonical instance in the
+ * {@linkplain StringPool#shared() shared pool}. Strings already in the
+ * pool are looked up in the parser's buffer so no copy is created.
+ * Annotate the setter of a repetitive field or value with:
+ * <pre>
+ * &#64;JsonDeserialize(using = PooledStringDeserializer.class)
+ * </pre>
+ * or for a list of strings use <code>contentUsing</code>.
+ */
+public class PooledStringDeserializer extends StdScalarDeserializer<String>
+{
+    private static final long serialVersionUID = 1L;
+
+    public PooledStringDeserializer()
+    {
+        super(String.class);
+    }
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context)
+    throws IOException
+    {
+        StringPool pool = StringPool.shared();
+        if (parser.getCurrentToken() == JsonToken.VALUE_STRING)
+        {
+            return pool.get(parser);
+        }
+        return pool.get(StringDeserializer.instance.deserialize(parser, context));
+    }
+}
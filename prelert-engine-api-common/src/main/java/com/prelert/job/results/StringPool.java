@@ -0,0 +1,227 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+
+package com.prelert.job.results;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A bounded pool of canonical strings for the field names and values
+ * that repeat across many results, such as the by field name or an
+ * airline code. Returning the pooled instance for an equal string lets
+ * every result share one copy.
+ * <br>
+ * The pool is a fixed size hash table with a single string per slot.
+ * A string whose slot holds a different string replaces it, so the
+ * memory used is bounded and the frequently seen values stay pooled.
+ * There is no locking: concurrent callers may replace each other's
+ * entries, which only costs a duplicate copy, never a wrong result.
+ * Unlike {@link String#intern()} nothing is added to the JVM's string
+ * table, which is never shrunk.
+ * <br>
+ * Strings longer than {@value #MAX_POOLED_LENGTH} characters are
+ * unlikely to repeat and are not pooled.
+ */
+public final class StringPool
+{
+    /**
+     * The default number of slots
+     */
+    public static final int DEFAULT_SIZE = 8192;
+
+    /**
+     * Longer strings are not pooled
+     */
+    public static final int MAX_POOLED_LENGTH = 256;
+
+    private static final StringPool SHARED = new StringPool(DEFAULT_SIZE);
+
+    private final AtomicReferenceArray<String> m_Slots;
+    private final int m_Mask;
+    private final LongAdder m_Hits = new LongAdder();
+    private final LongAdder m_Misses = new LongAdder();
+
+    /**
+     * @param size The number of slots, rounded up to a power of 2
+     */
+    public StringPool(int size)
+    {
+        if (size < 1 || size > (1 << 30))
+        {
+            throw new IllegalArgumentException("String pool size must be between 1 and 2^30: "
+                    + size);
+        }
+        int slots = Integer.highestOneBit(size);
+        if (slots < size)
+        {
+            slots <<= 1;
+        }
+        m_Slots = new AtomicReferenceArray<>(slots);
+        m_Mask = slots - 1;
+    }
+
+    /**
+     * @return The pool used by the result classes and their deserialisers
+     */
+    public static StringPool shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Get the pooled string equal to <code>value</code>, pooling
+     * <code>value</code> if there is none
+     *
+     * @param value The string, may be <code>null</code>
+     * @return The canonical string or <code>null</code>
+     */
+    public String get(String value)
+    {
+        if (value == null || value.length() > MAX_POOLED_LENGTH)
+        {
+            return value;
+        }
+
+        int slot = slot(value.hashCode());
+        String pooled = m_Slots.get(slot);
+        if (pooled == value || value.equals(pooled))
+        {
+            m_Hits.increment();
+            return pooled;
+        }
+
+        m_Misses.increment();
+        m_Slots.lazySet(slot, value);
+        return value;
+    }
+
+    /**
+     * Get the pooled string of the given characters. No string is
+     * created if it is already pooled.
+     *
+     * @param chars The characters
+     * @param offset The index of the first character
+     * @param length The number of characters
+     * @return The canonical string
+     */
+    public String get(char[] chars, int offset, int length)
+    {
+        if (length > MAX_POOLED_LENGTH)
+        {
+            return new String(chars, offset, length);
+        }
+
+        // Same as String.hashCode() so both lookups use the same slot
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++)
+        {
+            hash = 31 * hash + chars[i];
+        }
+
+        int slot = slot(hash);
+        String pooled = m_Slots.get(slot);
+        if (pooled != null && contentEquals(pooled, chars, offset, length))
+        {
+            m_Hits.increment();
+            return pooled;
+        }
+
+        m_Misses.increment();
+        String value = new String(chars, offset, length);
+        m_Slots.lazySet(slot, value);
+        return value;
+    }
+
+    /**
+     * Get the pooled string of the parser's current text token,
+     * reading the parser's character buffer where it has one
+     *
+     * @param parser The parser positioned on a string value
+     * @return The canonical string or <code>null</code> for a null token
+     * @throws IOException If the token cannot be read
+     */
+    public String get(JsonParser parser) throws IOException
+    {
+        if (parser.hasTextCharacters())
+        {
+            return get(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        }
+        return get(parser.getValueAsString());
+    }
+
+    /**
+     * @return The number of slots
+     */
+    public int size()
+    {
+        return m_Slots.length();
+    }
+
+    /**
+     * @return The number of lookups that found the string pooled
+     */
+    public long getHitCount()
+    {
+        return m_Hits.sum();
+    }
+
+    /**
+     * @return The number of lookups that had to pool the string
+     */
+    public long getMissCount()
+    {
+        return m_Misses.sum();
+    }
+
+    /**
+     * Empty the pool
+     */
+    public void clear()
+    {
+        for (int i = 0; i < m_Slots.length(); i++)
+        {
+            m_Slots.set(i, null);
+        }
+    }
+
+    private int slot(int hash)
+    {
+        return (hash ^ (hash >>> 16)) & m_Mask;
+    }
+
+    private static boolean contentEquals(String pooled, char[] chars, int offset, int length)
+    {
+        if (pooled.length() != length)
+        {
+            return false;
+        }
+        for (int i = 0; i < length; i++)
+        {
+            if (pooled.charAt(i) != chars[offset + i])
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
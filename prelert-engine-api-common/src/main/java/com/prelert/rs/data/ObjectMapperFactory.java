@@ -0,0 +1,148 @@
+/****************************************************************************
+ *                                                                          *
+ * Copyright 2015-2016 Prelert Ltd                                          *
+ *                                                                          *
+ * Licensed under the Apache License, Version 2.0 (the "License");          *
+ * you may not use this file except in compliance with the License.         *
+ * You may obtain a copy of the License at                                  *
+ *                                                                          *
+ *    http://www.apache.org/licenses/LICENSE-2.0                            *
+ *                                                                          *
+ * Unless required by applicable law or agreed to in writing, software      *
+ * distributed under the License is distributed on an "AS IS" BASIS,        *
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. *
+ * See the License for the specific language governing permissions and      *
+ * limitations under the License.                                           *
+ *                                                                          *
+ ***************************************************************************/
+
+package com.prelert.rs.data;
+
+import java.lang.reflect.Type;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+/**
+ * Creates {@linkplain ObjectMapper}s configured for the Engine API beans
+ * and caches the readers and writers made from them.
+ * <br>
+ * The mapper accepts a single value where an array is expected, omits
+ * null fields when writing and registers the Afterburner module, which
+ * replaces reflective calls to the beans' getters and setters with
+ * generated bytecode. Bean properties that cannot be optimised, for
+ * example non-public ones, are still bound by reflection.
+ * <br>
+ * An {@linkplain ObjectReader} or {@linkplain ObjectWriter} is created
+ * once per type and reused, so the type's (de)serializer is looked up
+ * once rather than on every call. Configuring the mapper returned by
+ * {@link #getMapper()} after readers or writers have been created does
+ * not affect them.
+ * <br>
+ * This class is thread safe. Most code should use the JSON factory
+ * returned by {@link #shared()}.
+ */
+public class ObjectMapperFactory
+{
+    private static final ObjectMapperFactory SHARED = new ObjectMapperFactory();
+
+    private final ObjectMapper m_Mapper;
+    private final ConcurrentMap<Type, ObjectReader> m_Readers;
+    private final ConcurrentMap<Type, ObjectWriter> m_Writers;
+
+    /**
+     * A factory for JSON
+     */
+    public ObjectMapperFactory()
+    {
+        this(new JsonFactory());
+    }
+
+    /**
+     * A factory for the format of <code>jsonFactory</code>,
+     * e.g. a <code>SmileFactory</code>
+     *
+     * @param jsonFactory The factory of parsers and generators
+     */
+    public ObjectMapperFactory(JsonFactory jsonFactory)
+    {
+        m_Mapper = newMapper(jsonFactory);
+        m_Readers = new ConcurrentHashMap<>();
+        m_Writers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * @return The shared JSON factory
+     */
+    public static ObjectMapperFactory shared()
+    {
+        return SHARED;
+    }
+
+    /**
+     * Create a new configured mapper that is not shared
+     *
+     * @param jsonFactory The factory of parsers and generators
+     * @return A new mapper
+     */
+    public static ObjectMapper newMapper(JsonFactory jsonFactory)
+    {
+        ObjectMapper mapper = new ObjectMapper(jsonFactory);
+        mapper.configure(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY, true);
+        mapper.setSerializationInclusion(JsonInclude.Include.NON_NULL);
+        mapper.registerModule(new AfterburnerModule());
+        return mapper;
+    }
+
+    /**
+     * @return This factory's mapper
+     */
+    public ObjectMapper getMapper()
+    {
+        return m_Mapper;
+    }
+
+    /**
+     * @param typeRef The type to read
+     * @return The cached reader for the type
+     */
+    public ObjectReader reader(TypeReference<?> typeRef)
+    {
+        return m_Readers.computeIfAbsent(typeRef.getType(), type -> m_Mapper.readerFor(typeRef));
+    }
+
+    /**
+     * @param type The type to read
+     * @return The cached reader for the type
+     */
+    public ObjectReader reader(Class<?> type)
+    {
+        return m_Readers.computeIfAbsent(type, t -> m_Mapper.readerFor(type));
+    }
+
+    /**
+     * @param typeRef The type to write
+     * @return The cached writer for the type
+     */
+    public ObjectWriter writer(TypeReference<?> typeRef)
+    {
+        return m_Writers.computeIfAbsent(typeRef.getType(), type -> m_Mapper.writerFor(typeRef));
+    }
+
+    /**
+     * @param type The type to write
+     * @return The cached writer for the type
+     */
+    public ObjectWriter writer(Class<?> type)
+    {
+        return m_Writers.computeIfAbsent(type, t -> m_Mapper.writerFor(type));
+    }
+}